@@ -0,0 +1,567 @@
+package de.dosmike.spongepowered.oreapi.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.*;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Generates a streaming decoder and encoder for every class with {@code @FromJson} fields.
+ * The decoder for {@code OreProject} is called {@code OreProjectJsonDecoder}, lives in the same package
+ * and has a single method {@code static void fill(OreProject instance, JsonReader reader)}, that reads
+ * one json object and assigns the fields directly, including the fields of super classes.
+ * The encoder {@code OreProjectJsonEncoder} has a single method
+ * {@code static void write(OreProject instance, JsonWriter writer)}, that writes the fields back into
+ * json the decoder can read, mapped values are turned back with TypeMapper#reverse.
+ * <br>
+ * Fields have to be accessible from within the package. The same field types as for
+ * JsonUtil#fillSelf are supported: String, boolean, int and long, enums with a static fromString(String)
+ * method, objects with a (JsonReader) or (JsonObject) constructor, and arrays of those.
+ * Lazy fields capture the json value with Lazy#capture instead.
+ * Values are mapped with a new instance of the mapper specified in the annotation.
+ */
+@SupportedAnnotationTypes(FromJsonProcessor.FROM_JSON)
+public class FromJsonProcessor extends AbstractProcessor {
+
+    static final String FROM_JSON = "de.dosmike.spongepowered.oreapi.utility.FromJson";
+    static final String TYPE_MAPPER = "de.dosmike.spongepowered.oreapi.utility.TypeMapper";
+    static final String IDENTITY_MAPPER = "de.dosmike.spongepowered.oreapi.utility.TypeMappers.IdentityMapper";
+    static final String LAZY = "de.dosmike.spongepowered.oreapi.utility.Lazy";
+    static final String JSON_READER = "com.google.gson.stream.JsonReader";
+    static final String JSON_OBJECT = "com.google.gson.JsonObject";
+    static final String SUFFIX = "JsonDecoder";
+    static final String ENCODER_SUFFIX = "JsonEncoder";
+
+    private Elements elements;
+    private Types types;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+        TypeElement fromJson = elements.getTypeElement(FROM_JSON);
+        if (fromJson == null) return false;
+        Set<TypeElement> classes = new LinkedHashSet<>();
+        for (Element field : roundEnv.getElementsAnnotatedWith(fromJson))
+            classes.add((TypeElement) field.getEnclosingElement());
+        for (TypeElement type : classes) {
+            try {
+                generate(type);
+            } catch (IOException | IllegalArgumentException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not generate decoder: "+e.getMessage(), type);
+            }
+            try {
+                generateEncoder(type);
+            } catch (IOException | IllegalArgumentException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not generate encoder: "+e.getMessage(), type);
+            }
+        }
+        return true;
+    }
+
+    //region model
+    /** a {@code @FromJson} field */
+    private static class Property {
+        String field;
+        String key;
+        boolean optional;
+        /** the field type, or the component type for arrays */
+        TypeMirror elementType;
+        boolean asArray;
+        /** the json value is captured, whatever it is */
+        boolean lazy;
+        /** the type argument of lazy fields */
+        TypeMirror lazyType;
+        /** null if values are not mapped */
+        TypeMirror mapper;
+        /** the type read from json, before mapping */
+        TypeMirror inputType;
+    }
+
+    /** json keys to properties, nested for keys like "stats.downloads" */
+    private static class Node {
+        final Map<String, Node> children = new LinkedHashMap<>();
+        Property property;
+
+        void bind(String[] path, int depth, Property property) {
+            if (depth == path.length) {
+                if (this.property != null || !children.isEmpty())
+                    throw new IllegalArgumentException("Json key '"+property.key+"' is bound more than once");
+                this.property = property;
+            } else {
+                if (this.property != null)
+                    throw new IllegalArgumentException("Json key '"+property.key+"' is nested in a bound key");
+                children.computeIfAbsent(path[depth], k -> new Node()).bind(path, depth + 1, property);
+            }
+        }
+    }
+
+    private List<Property> collect(TypeElement type) {
+        List<Property> properties = new ArrayList<>();
+        TypeElement fromJson = elements.getTypeElement(FROM_JSON);
+        for (TypeElement t = type; t != null && !t.getQualifiedName().contentEquals("java.lang.Object"); t = superclass(t)) {
+            for (VariableElement field : ElementFilter.fieldsIn(t.getEnclosedElements())) {
+                AnnotationMirror annotation = null;
+                for (AnnotationMirror mirror : field.getAnnotationMirrors())
+                    if (types.isSameType(mirror.getAnnotationType(), fromJson.asType())) annotation = mirror;
+                if (annotation == null) continue;
+                if (field.getModifiers().contains(Modifier.PRIVATE) || field.getModifiers().contains(Modifier.FINAL) ||
+                        !elements.getPackageOf(t).equals(elements.getPackageOf(type)))
+                    throw new IllegalArgumentException("Field "+t.getSimpleName()+"."+field.getSimpleName()+" can not be assigned from "+type.getSimpleName()+SUFFIX);
+                properties.add(property(field, annotation));
+            }
+        }
+        return properties;
+    }
+
+    private TypeElement superclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) types.asElement(superclass) : null;
+    }
+
+    private Property property(VariableElement field, AnnotationMirror annotation) {
+        Property property = new Property();
+        property.field = field.getSimpleName().toString();
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : elements.getElementValuesWithDefaults(annotation).entrySet()) {
+            Object value = entry.getValue().getValue();
+            switch (entry.getKey().getSimpleName().toString()) {
+                case "value": property.key = (String) value; break;
+                case "optional": property.optional = (Boolean) value; break;
+                case "mapper": property.mapper = (TypeMirror) value; break;
+            }
+        }
+        TypeMirror type = field.asType();
+        property.asArray = type.getKind() == TypeKind.ARRAY;
+        property.elementType = property.asArray ? ((ArrayType) type).getComponentType() : type;
+        if (property.mapper != null && name(property.mapper).equals(IDENTITY_MAPPER))
+            property.mapper = null;
+        property.lazy = name(type).equals(LAZY);
+        if (property.lazy && property.mapper != null)
+            throw new IllegalArgumentException("Lazy field "+property.field+" can not be mapped");
+        if (property.lazy) {
+            List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+            if (arguments.size() != 1)
+                throw new IllegalArgumentException("Lazy field "+property.field+" has no type argument");
+            property.lazyType = arguments.get(0);
+        }
+        property.inputType = property.mapper != null ? mapperArgument(property.mapper, 0) : property.elementType;
+        return property;
+    }
+
+    /** @return the type argument of the TypeMapper the mapper implements, 0 for input and 1 for output */
+    private TypeMirror mapperArgument(TypeMirror mapper, int index) {
+        Deque<TypeMirror> open = new ArrayDeque<>();
+        open.add(mapper);
+        while (!open.isEmpty()) {
+            TypeMirror type = open.poll();
+            if (name(type).equals(TYPE_MAPPER))
+                return ((DeclaredType) type).getTypeArguments().get(index);
+            open.addAll(types.directSupertypes(type));
+        }
+        throw new IllegalArgumentException(mapper+" is not a TypeMapper");
+    }
+    //endregion
+
+    //region code generation
+    private String name(TypeMirror type) {
+        return types.erasure(type).toString();
+    }
+
+    private boolean isEnum(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && types.asElement(type).getKind() == ElementKind.ENUM;
+    }
+
+    private boolean hasConstructor(TypeMirror type, String parameter) {
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(types.asElement(type).getEnclosedElements())) {
+            if (constructor.getModifiers().contains(Modifier.PRIVATE)) continue;
+            List<? extends VariableElement> parameters = constructor.getParameters();
+            if (parameters.size() == 1 && name(parameters.get(0).asType()).equals(parameter)) return true;
+        }
+        return false;
+    }
+
+    private String boxed(TypeMirror type) {
+        return type.getKind().isPrimitive() ? types.boxedClass((PrimitiveType) type).getQualifiedName().toString() : name(type);
+    }
+
+    private static String helper(String prefix, String typeName) {
+        return prefix + typeName.substring(typeName.lastIndexOf('.') + 1);
+    }
+
+    private Node tree(List<Property> properties) {
+        Node root = new Node();
+        for (Property property : properties)
+            root.bind(property.key.split("\\."), 0, property);
+        return root;
+    }
+
+    private String instanceType(TypeElement type) {
+        String instanceType = type.getQualifiedName().toString();
+        if (!type.getTypeParameters().isEmpty()) {
+            StringJoiner wildcards = new StringJoiner(", ", "<", ">");
+            for (int i = 0; i < type.getTypeParameters().size(); i++) wildcards.add("?");
+            instanceType += wildcards;
+        }
+        return instanceType;
+    }
+
+    private void generate(TypeElement type) throws IOException {
+        List<Property> properties = collect(type);
+        Node root = tree(properties);
+
+        String packageName = elements.getPackageOf(type).getQualifiedName().toString();
+        String decoderName = type.getSimpleName() + SUFFIX;
+        String instanceType = instanceType(type);
+        // helpers for enum and object values, by name
+        Map<String, TypeMirror> helpers = new TreeMap<>();
+        for (Property property : properties)
+            if (property.lazy) continue;
+            else if (isEnum(property.inputType) || (property.inputType.getKind() == TypeKind.DECLARED && !name(property.inputType).startsWith("java.lang.")))
+                helpers.put(name(property.inputType), property.inputType);
+
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(packageName + "." + decoderName, type);
+        try (Writer writer = file.openWriter()) {
+            Source out = new Source(new PrintWriter(writer));
+            out.line("package " + packageName + ";");
+            out.line("");
+            out.line("import com.google.gson.stream.JsonReader;");
+            out.line("import com.google.gson.stream.JsonToken;");
+            out.line("");
+            out.line("import java.io.IOException;");
+            out.line("");
+            out.line("/**");
+            out.line(" * Generated from the {@code @FromJson} fields of {@link " + type.getSimpleName() + "}, do not edit.");
+            out.line(" */");
+            out.open("final class " + decoderName + " {");
+            out.line("");
+            out.line("private " + decoderName + "() {}");
+            out.line("");
+            for (Property property : properties)
+                if (property.mapper != null)
+                    out.line("private static final " + name(property.mapper) + " MAPPER_" + property.field + " = new " + name(property.mapper) + "();");
+
+            out.line("");
+            out.open("static void fill(" + instanceType + " instance, JsonReader reader) throws IOException {");
+            for (Property property : properties)
+                if (!property.optional) out.line("boolean filled_" + property.field + " = false;");
+            object(out, root);
+            for (Property property : properties)
+                if (!property.optional)
+                    out.line("if (!filled_" + property.field + ") throw new RuntimeException(\"Missing non-optional field '" + property.key + "' before \"+reader.getPath());");
+            out.close("}");
+
+            for (Map.Entry<String, TypeMirror> helper : helpers.entrySet()) {
+                String name = helper.getKey();
+                out.line("");
+                if (isEnum(helper.getValue())) {
+                    String constants = "CONSTANTS_" + helper("", name).toUpperCase(Locale.ROOT);
+                    out.line("private static final java.util.Map<String, " + name + "> " + constants + " = new java.util.HashMap<>();");
+                    out.open("static {");
+                    out.open("for (" + name + " constant : " + name + ".values()) {");
+                    out.open("try {");
+                    out.line(constants + ".put(constant.name().toLowerCase(java.util.Locale.ROOT), " + name + ".fromString(constant.name()));");
+                    out.close("} catch (RuntimeException ignore) {}");
+                    out.close("}");
+                    out.close("}");
+                    out.line("");
+                    out.open("private static " + name + " " + helper("enum", name) + "(String value) {");
+                    out.line(name + " constant = " + constants + ".get(value.toLowerCase(java.util.Locale.ROOT));");
+                    out.line("if (constant != null) return constant;");
+                    out.open("try {");
+                    out.line("return " + name + ".fromString(value);");
+                    out.close("} catch (RuntimeException e) {");
+                    out.indent++;
+                    out.line("return null;");
+                    out.close("}");
+                    out.close("}");
+                } else {
+                    out.open("private static " + name + " " + helper("object", name) + "(JsonReader reader) throws IOException {");
+                    out.open("if (reader.peek() != JsonToken.BEGIN_OBJECT) {");
+                    out.line("reader.skipValue();");
+                    out.line("return null;");
+                    out.close("}");
+                    if (hasConstructor(helper.getValue(), JSON_READER))
+                        out.line("return new " + name + "(reader);");
+                    else if (hasConstructor(helper.getValue(), JSON_OBJECT))
+                        out.line("return new " + name + "(new com.google.gson.JsonParser().parse(reader).getAsJsonObject());");
+                    else
+                        throw new IllegalArgumentException(name + " has no (JsonReader) or (JsonObject) constructor");
+                    out.close("}");
+                }
+            }
+            out.line("");
+            out.close("}");
+        }
+    }
+
+    private void object(Source out, Node node) {
+        out.line("reader.beginObject();");
+        out.open("while (reader.hasNext()) {");
+        out.open("switch (reader.nextName()) {");
+        for (Map.Entry<String, Node> child : node.children.entrySet()) {
+            out.open("case \"" + child.getKey().replace("\\", "\\\\").replace("\"", "\\\"") + "\":");
+            if (child.getValue().property != null) {
+                property(out, child.getValue().property);
+            } else {
+                out.open("if (reader.peek() == JsonToken.BEGIN_OBJECT) {");
+                object(out, child.getValue());
+                out.close("} else {");
+                out.indent++;
+                out.line("reader.skipValue();");
+                out.close("}");
+            }
+            out.line("break;");
+            out.indent--;
+        }
+        out.open("default:");
+        out.line("reader.skipValue();");
+        out.indent--;
+        out.close("}");
+        out.close("}");
+        out.line("reader.endObject();");
+    }
+
+    private void property(Source out, Property property) {
+        out.open("if (reader.peek() == JsonToken.NULL) {");
+        out.line("reader.nextNull();");
+        out.close("} else try {");
+        out.indent++;
+        if (property.lazy) {
+            out.line("instance." + property.field + " = " + LAZY + ".capture(reader);");
+        } else if (property.asArray) {
+            out.line("if (reader.peek() != JsonToken.BEGIN_ARRAY) throw new RuntimeException(\"Expected array where non-array json element supplied at '" + property.key + "'\");");
+            String element = property.mapper != null ? boxed(mapperArgument(property.mapper, 1)) : boxed(property.elementType);
+            String list = "list_" + property.field;
+            out.line("java.util.List<" + element + "> " + list + " = new java.util.ArrayList<>();");
+            out.line("reader.beginArray();");
+            out.open("while (reader.hasNext()) {");
+            out.open("if (reader.peek() == JsonToken.NULL) {");
+            out.line("reader.nextNull();");
+            out.line(list + ".add(" + mapped(property, defaultValue(property.inputType)) + ");");
+            out.close("} else {");
+            out.indent++;
+            out.line(list + ".add(" + mapped(property, value(property.inputType)) + ");");
+            out.close("}");
+            out.close("}");
+            out.line("reader.endArray();");
+            if (property.elementType.getKind().isPrimitive()) {
+                out.line("instance." + property.field + " = new " + property.elementType + "[" + list + ".size()];");
+                out.line("for (int i = 0; i < " + list + ".size(); i++) instance." + property.field + "[i] = " + list + ".get(i);");
+            } else {
+                out.line("instance." + property.field + " = " + list + ".toArray(new " + name(property.elementType) + "[0]);");
+            }
+        } else {
+            out.line("if (reader.peek() == JsonToken.BEGIN_ARRAY) throw new RuntimeException(\"Expected non-array where array json element supplied at '" + property.key + "'\");");
+            out.line("instance." + property.field + " = " + mapped(property, value(property.inputType)) + ";");
+        }
+        if (!property.optional) out.line("filled_" + property.field + " = true;");
+        out.close("} catch (RuntimeException e) {");
+        out.indent++;
+        out.line("throw new RuntimeException(\"Could not fill field " + property.field + " at \"+reader.getPath(), e);");
+        out.close("}");
+    }
+
+    private String mapped(Property property, String expression) {
+        return property.mapper != null ? "MAPPER_" + property.field + ".apply(" + expression + ")" : expression;
+    }
+
+    private String value(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN: return "(reader.peek() == JsonToken.STRING ? Boolean.parseBoolean(reader.nextString()) : reader.nextBoolean())";
+            case LONG: return "reader.nextLong()";
+            case INT: return "reader.nextInt()";
+            case DECLARED: break;
+            default: throw new IllegalArgumentException("Unsupported field type " + type);
+        }
+        String name = name(type);
+        switch (name) {
+            case "java.lang.String": return "reader.nextString()";
+            case "java.lang.Boolean": return value(types.getPrimitiveType(TypeKind.BOOLEAN));
+            case "java.lang.Long": return value(types.getPrimitiveType(TypeKind.LONG));
+            case "java.lang.Integer": return value(types.getPrimitiveType(TypeKind.INT));
+        }
+        return isEnum(type) ? helper("enum", name) + "(reader.nextString())" : helper("object", name) + "(reader)";
+    }
+
+    private String defaultValue(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN: return "false";
+            case LONG: return "0L";
+            case INT: return "0";
+            default: return "(" + name(type) + ") null";
+        }
+    }
+    //endregion
+
+    //region encoder generation
+    private boolean isObject(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && !isEnum(type) && !name(type).startsWith("java.lang.");
+    }
+
+    private void generateEncoder(TypeElement type) throws IOException {
+        List<Property> properties = collect(type);
+        Node root = tree(properties);
+
+        String packageName = elements.getPackageOf(type).getQualifiedName().toString();
+        String encoderName = type.getSimpleName() + ENCODER_SUFFIX;
+        // helpers for enum and object values, by name. lazy values are written with them once decoded
+        Map<String, TypeMirror> helpers = new TreeMap<>();
+        for (Property property : properties) {
+            TypeMirror value = property.inputType;
+            if (property.lazy)
+                value = property.lazyType.getKind() == TypeKind.ARRAY ? ((ArrayType) property.lazyType).getComponentType() : property.lazyType;
+            if (isEnum(value) || isObject(value)) helpers.put(name(value), value);
+        }
+
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(packageName + "." + encoderName, type);
+        try (Writer writer = file.openWriter()) {
+            Source out = new Source(new PrintWriter(writer));
+            out.line("package " + packageName + ";");
+            out.line("");
+            out.line("import com.google.gson.stream.JsonWriter;");
+            out.line("");
+            out.line("import java.io.IOException;");
+            out.line("");
+            out.line("/**");
+            out.line(" * Generated from the {@code @FromJson} fields of {@link " + type.getSimpleName() + "}, do not edit.");
+            out.line(" */");
+            out.open("final class " + encoderName + " {");
+            out.line("");
+            out.line("private " + encoderName + "() {}");
+            out.line("");
+            for (Property property : properties)
+                if (property.mapper != null)
+                    out.line("private static final " + name(property.mapper) + " MAPPER_" + property.field + " = new " + name(property.mapper) + "();");
+
+            out.line("");
+            out.open("static void write(" + instanceType(type) + " instance, JsonWriter writer) throws IOException {");
+            writeObject(out, root);
+            out.close("}");
+
+            for (Map.Entry<String, TypeMirror> helper : helpers.entrySet()) {
+                String name = helper.getKey();
+                out.line("");
+                if (isEnum(helper.getValue())) {
+                    out.open("private static void " + helper("enum", name) + "(" + name + " value, JsonWriter writer) throws IOException {");
+                    out.line("if (value == null) writer.nullValue();");
+                    out.line("else writer.value(value.name());");
+                } else {
+                    TypeElement element = (TypeElement) types.asElement(helper.getValue());
+                    if (!elements.getPackageOf(element).equals(elements.getPackageOf(type)) || collect(element).isEmpty())
+                        throw new IllegalArgumentException(name + " has no encoder in this package");
+                    out.open("private static void " + helper("object", name) + "(" + name + " value, JsonWriter writer) throws IOException {");
+                    out.line("if (value == null) writer.nullValue();");
+                    out.line("else " + name + ENCODER_SUFFIX + ".write(value, writer);");
+                }
+                out.close("}");
+            }
+            out.line("");
+            out.close("}");
+        }
+    }
+
+    private void writeObject(Source out, Node node) {
+        out.line("writer.beginObject();");
+        for (Map.Entry<String, Node> child : node.children.entrySet()) {
+            out.line("writer.name(\"" + child.getKey().replace("\\", "\\\\").replace("\"", "\\\"") + "\");");
+            if (child.getValue().property != null)
+                writeProperty(out, child.getValue().property);
+            else
+                writeObject(out, child.getValue());
+        }
+        out.line("writer.endObject();");
+    }
+
+    private void writeProperty(Source out, Property property) {
+        String field = "instance." + property.field;
+        if (property.lazy) {
+            out.line("if (" + field + " == null) writer.nullValue();");
+            out.open("else " + field + ".write(writer, (value, json) -> {");
+            if (property.lazyType.getKind() == TypeKind.ARRAY) {
+                TypeMirror component = ((ArrayType) property.lazyType).getComponentType();
+                out.open("if (value == null) {");
+                out.line("json.nullValue();");
+                out.line("return;");
+                out.close("}");
+                out.line("json.beginArray();");
+                out.line("for (" + component + " element : value) " + writeValue(component, "element", "json"));
+                out.line("json.endArray();");
+            } else {
+                out.line(writeValue(property.lazyType, "value", "json"));
+            }
+            out.close("});");
+        } else if (property.asArray) {
+            out.line("if (" + field + " == null) writer.nullValue();");
+            out.open("else {");
+            out.line("writer.beginArray();");
+            out.line("for (" + property.elementType + " element : " + field + ") " + writeValue(property.inputType, reversed(property, "element"), "writer"));
+            out.line("writer.endArray();");
+            out.close("}");
+        } else {
+            out.line(writeValue(property.inputType, reversed(property, field), "writer"));
+        }
+    }
+
+    private String reversed(Property property, String expression) {
+        return property.mapper != null ? "MAPPER_" + property.field + ".reverse(" + expression + ")" : expression;
+    }
+
+    /** @return a statement that writes the expression of the type */
+    private String writeValue(TypeMirror type, String expression, String writer) {
+        switch (type.getKind()) {
+            case BOOLEAN: case LONG: case INT: return writer + ".value(" + expression + ");";
+            case DECLARED: break;
+            default: throw new IllegalArgumentException("Unsupported field type " + type);
+        }
+        String name = name(type);
+        switch (name) {
+            case "java.lang.String": case "java.lang.Boolean": return writer + ".value(" + expression + ");";
+            case "java.lang.Long": case "java.lang.Integer": return writer + ".value((Number) " + expression + ");";
+        }
+        return (isEnum(type) ? helper("enum", name) : helper("object", name)) + "(" + expression + ", " + writer + ");";
+    }
+    //endregion
+
+    /** indenting source writer */
+    private static class Source {
+        private final PrintWriter writer;
+        int indent = 0;
+
+        Source(PrintWriter writer) {
+            this.writer = writer;
+        }
+
+        void line(String line) {
+            if (!line.isEmpty())
+                for (int i = 0; i < indent; i++) writer.print("    ");
+            writer.println(line);
+        }
+
+        void open(String line) {
+            line(line);
+            indent++;
+        }
+
+        void close(String line) {
+            indent--;
+            line(line);
+        }
+    }
+
+}
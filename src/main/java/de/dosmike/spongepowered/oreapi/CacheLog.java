@@ -0,0 +1,530 @@
+package de.dosmike.spongepowered.oreapi;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import de.dosmike.spongepowered.oreapi.netobject.OreNamespace;
+import de.dosmike.spongepowered.oreapi.netobject.OreProject;
+import de.dosmike.spongepowered.oreapi.netobject.OreProjectReference;
+import de.dosmike.spongepowered.oreapi.netobject.OreVersion;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file that keeps projects and versions across restarts, so the {@link ObjectCache}
+ * starts warm instead of fetching everything again through the rate limiter.
+ * <br>
+ * The file starts with a magic number and the format version, followed by records of
+ * {@code length, crc32, kind, written at, key, alias, payload}. The payload is the json of the
+ * generated encoders, so the generated decoders read it back, versions also keep their project
+ * reference and changelog. On open the file is memory-mapped and only the record headers are
+ * indexed, the newest record for a key wins. Records are decoded when they're looked up the first
+ * time, after that the object cache holds them. Writes are collected and appended by a background
+ * thread, so a project that is cached again before that is only written once. Objects that did not
+ * change since they were written, e.g. because they were revalidated, are only written again once
+ * their record is half the max age old.
+ * <br>
+ * A torn record at the end, e.g. from a crash, is cut off. Once superseded and outdated records take
+ * more space than the live records, the file is compacted, on open and by the background thread.
+ */
+class CacheLog implements Closeable {
+
+    private static final int MAGIC = 0x4f524543; // OREC
+    private static final int FORMAT = 1;
+    private static final int FILE_HEADER = 8;
+    /** length and crc in front of every record */
+    private static final int RECORD_PREFIX = 8;
+    private static final byte PROJECT = 1, VERSION = 2;
+    private static final long WRITE_DELAY_MS = 1000;
+    /** compact if superseded records take more than half the file, and at least this many bytes */
+    private static final long COMPACT_THRESHOLD = 1 << 20;
+
+    private final Path file;
+    private final long maxAge;
+    private FileChannel channel;
+    /** the records that were in the file when it was opened or compacted */
+    @Nullable
+    private MappedByteBuffer mapped;
+    /** record offsets in mapped, by key. Removed once a record was loaded, or a newer value was cached */
+    private final Map<String, Integer> offsets = new ConcurrentHashMap<>();
+    /** project keys by namespace */
+    private final Map<OreNamespace, String> projectKeys = new ConcurrentHashMap<>();
+    /** the newest record in the file for every key, guarded by this */
+    private final Map<String, Stored> records = new HashMap<>();
+    /** the bytes of all records in records, guarded by this */
+    private long liveBytes = 0;
+    /** objects waiting to be written, by key */
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "OreApi-CacheLog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static class Pending {
+        final byte kind;
+        final String key;
+        final String alias;
+        final Object value;
+        Pending(byte kind, String key, String alias, Object value) {
+            this.kind = kind;
+            this.key = key;
+            this.alias = alias;
+            this.value = value;
+        }
+    }
+
+    /** where a record is in the file, and what it holds to detect unchanged objects */
+    private static class Stored {
+        final long offset;
+        /** including the prefix */
+        final int size;
+        final long writtenAt;
+        final int payloadLength;
+        final int payloadCrc;
+        Stored(long offset, int size, long writtenAt, int payloadLength, int payloadCrc) {
+            this.offset = offset;
+            this.size = size;
+            this.writtenAt = writtenAt;
+            this.payloadLength = payloadLength;
+            this.payloadCrc = payloadCrc;
+        }
+        Stored moveTo(long offset) {
+            return new Stored(offset, size, writtenAt, payloadLength, payloadCrc);
+        }
+    }
+
+    /**
+     * Opens or creates the file and indexes the records that are younger than maxAge.
+     *
+     * @param maxAge ms that records written by earlier runs are served for
+     */
+    CacheLog(Path file, long maxAge) throws IOException {
+        this.file = file;
+        this.maxAge = maxAge;
+        open();
+        compactIfWasteful();
+    }
+
+    static String projectKey(String pluginKey) {
+        return "p/" + pluginKey;
+    }
+    static String versionKey(String versionKey) {
+        return "v/" + versionKey;
+    }
+
+    private static FileChannel lock(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.tryLock() == null) throw new OverlappingFileLockException();
+        } catch (OverlappingFileLockException e) {
+            channel.close();
+            throw new IOException(file + " is used by another cache");
+        }
+        return channel;
+    }
+
+    //region reading
+    private synchronized void open() throws IOException {
+        channel = lock(file);
+        offsets.clear();
+        projectKeys.clear();
+        records.clear();
+        liveBytes = 0;
+        mapped = null;
+        long size = channel.size();
+        if (size < FILE_HEADER) {
+            reset();
+            return;
+        }
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, Integer.MAX_VALUE));
+        if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != FORMAT) {
+            // written by another version, the records are only a cache
+            mapped = null;
+            reset();
+            return;
+        }
+        int end = scan(mapped.capacity());
+        if (size > Integer.MAX_VALUE) {
+            // offsets are ints, the records behind that are dropped by the next compaction
+            Logger.getLogger(CacheLog.class.getName()).warning(file + " is larger than 2 GB, only the records in front are read");
+            channel.position(size);
+            return;
+        }
+        if (end < size) {
+            try {
+                channel.truncate(end);
+            } catch (IOException ignore) {
+                // can fail on systems that don't allow truncating mapped files, the tail is overwritten then
+            }
+        }
+        channel.position(end);
+    }
+
+    private void reset() throws IOException {
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+        header.putInt(MAGIC).putInt(FORMAT).flip();
+        channel.write(header, 0);
+        channel.position(FILE_HEADER);
+    }
+
+    /** @return the end of the last intact record */
+    private int scan(int size) {
+        long oldest = System.currentTimeMillis() - maxAge;
+        CRC32 crc = new CRC32();
+        int offset = FILE_HEADER;
+        while (offset + RECORD_PREFIX <= size) {
+            int length = mapped.getInt(offset);
+            if (length < 0 || length > size - offset - RECORD_PREFIX) break;
+            ByteBuffer body = slice(offset + RECORD_PREFIX, length);
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != mapped.getInt(offset + 4)) break;
+            body.rewind();
+            try {
+                DataInputStream in = new DataInputStream(new ByteBufferInputStream(body));
+                byte kind = in.readByte();
+                long writtenAt = in.readLong();
+                String key = in.readUTF();
+                String alias = in.readUTF();
+                Stored previous = records.remove(key);
+                if (previous != null) liveBytes -= previous.size;
+                offsets.remove(key);
+                if (writtenAt >= oldest) {
+                    int payloadLength = body.remaining();
+                    crc.reset();
+                    crc.update(body);
+                    Stored record = new Stored(offset, RECORD_PREFIX + length, writtenAt, payloadLength, (int) crc.getValue());
+                    records.put(key, record);
+                    liveBytes += record.size;
+                    offsets.put(key, offset);
+                    if (kind == PROJECT) {
+                        int slash = alias.indexOf('/');
+                        projectKeys.put(new OreNamespace(alias.substring(0, slash), alias.substring(slash + 1)), key);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                break;
+            }
+            offset += RECORD_PREFIX + length;
+        }
+        return offset;
+    }
+
+    private ByteBuffer slice(int offset, int length) {
+        ByteBuffer buffer = mapped.duplicate();
+        buffer.position(offset);
+        buffer.limit(offset + length);
+        return buffer.slice();
+    }
+
+    /** @return the record body, or null if it's gone. Compaction swaps the mapped file, so this is synchronized */
+    @Nullable
+    private synchronized ByteBuffer record(String key) {
+        Integer offset = offsets.remove(key);
+        if (offset == null || mapped == null) return null;
+        return slice(offset + RECORD_PREFIX, mapped.getInt(offset));
+    }
+
+    /** @return the record body behind the header, or null if it's gone or too old */
+    @Nullable
+    private DataInputStream take(String key) throws IOException {
+        ByteBuffer body = record(key);
+        if (body == null) return null;
+        DataInputStream in = new DataInputStream(new ByteBufferInputStream(body));
+        in.readByte();
+        if (in.readLong() < System.currentTimeMillis() - maxAge) return null;
+        in.readUTF();
+        in.readUTF();
+        return in;
+    }
+
+    private static byte[] bytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static JsonReader json(DataInputStream in) throws IOException {
+        return new JsonReader(new InputStreamReader(new ByteArrayInputStream(bytes(in)), StandardCharsets.UTF_8));
+    }
+
+    /** @return the project from an earlier run, once */
+    Optional<OreProject> project(OreNamespace namespace) {
+        String key = projectKeys.remove(namespace);
+        // the plugin might have moved to another namespace in a later record
+        return key == null ? Optional.empty() : project(key).filter(project -> project.getNamespace().equals(namespace));
+    }
+
+    /** @return the project from an earlier run, once */
+    Optional<OreProject> project(String key) {
+        try {
+            DataInputStream in = take(key);
+            if (in == null) return Optional.empty();
+            return Optional.of(new OreProject(json(in)));
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return Optional.empty();
+        }
+    }
+
+    /** @return the version from an earlier run, once */
+    Optional<OreVersion> version(String key) {
+        try {
+            DataInputStream in = take(key);
+            if (in == null) return Optional.empty();
+            OreProjectReference project = OreProjectReference.readJson(json(in));
+            OreVersion version = new OreVersion(project, json(in));
+            if (in.readBoolean()) version.updateChangelog(new String(bytes(in), StandardCharsets.UTF_8));
+            return Optional.of(version);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return Optional.empty();
+        }
+    }
+    //endregion
+
+    //region writing
+    void write(String key, OreProject project) {
+        enqueue(new Pending(PROJECT, key, project.getNamespace().toString(), project));
+    }
+
+    void write(String key, OreVersion version) {
+        enqueue(new Pending(VERSION, key, "", version));
+    }
+
+    private void enqueue(Pending record) {
+        if (writer.isShutdown()) return;
+        // the record read on open is outdated now
+        offsets.remove(record.key);
+        pending.put(record.key, record);
+        if (scheduled.compareAndSet(false, true))
+            writer.schedule(this::flushQuietly, WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Appends all pending records that changed, and compacts the file if that is worth it.
+     * Objects that fail to encode are skipped, if the file can't be written they stay pending.
+     */
+    synchronized void flush() throws IOException {
+        scheduled.set(false);
+        if (pending.isEmpty() || !channel.isOpen()) return;
+        long now = System.currentTimeMillis();
+        long position = channel.position();
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(4096);
+        DataOutputStream out = new DataOutputStream(batch);
+        CRC32 crc = new CRC32();
+        Map<String, Pending> taken = new HashMap<>();
+        Map<String, Stored> written = new HashMap<>();
+        for (String key : pending.keySet()) {
+            Pending record = pending.remove(key);
+            if (record == null) continue;
+            taken.put(key, record);
+            byte[] payload;
+            try {
+                payload = payload(record);
+            } catch (IOException | RuntimeException e) {
+                // one broken object should not keep the others from being written
+                e.printStackTrace();
+                continue;
+            }
+            crc.reset();
+            crc.update(payload, 0, payload.length);
+            int payloadCrc = (int) crc.getValue();
+            Stored previous = records.get(key);
+            if (previous != null && previous.payloadLength == payload.length && previous.payloadCrc == payloadCrc
+                    && previous.writtenAt >= now - maxAge / 2) continue;
+            byte[] body = body(record, now, payload);
+            crc.reset();
+            crc.update(body, 0, body.length);
+            written.put(key, new Stored(position + batch.size(), RECORD_PREFIX + body.length, now, payload.length, payloadCrc));
+            out.writeInt(body.length);
+            out.writeInt((int) crc.getValue());
+            out.write(body);
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+            while (buffer.hasRemaining()) channel.write(buffer);
+        } catch (IOException e) {
+            // cut off what made it into the file and retry with the next flush, unless there's something newer
+            try {
+                channel.truncate(position);
+                channel.position(position);
+            } catch (IOException ignore) {
+            }
+            taken.forEach(pending::putIfAbsent);
+            throw e;
+        }
+        written.forEach((key, stored) -> {
+            Stored previous = records.put(key, stored);
+            if (previous != null) liveBytes -= previous.size;
+            liveBytes += stored.size;
+        });
+        compactIfWasteful();
+    }
+
+    private static byte[] body(Pending record, long writtenAt, byte[] payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(record.kind);
+        out.writeLong(writtenAt);
+        out.writeUTF(record.key);
+        out.writeUTF(record.alias);
+        out.write(payload);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] payload(Pending record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        if (record.kind == PROJECT) {
+            OreProject project = (OreProject) record.value;
+            json(out, project::writeJson);
+        } else {
+            OreVersion version = (OreVersion) record.value;
+            json(out, version.getProjectRef().toReference()::writeJson);
+            json(out, version::writeJson);
+            Optional<String> changelog = version.getChangelog();
+            out.writeBoolean(changelog.isPresent());
+            if (changelog.isPresent()) {
+                // changelogs can be longer than writeUTF allows
+                byte[] text = changelog.get().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(text.length);
+                out.write(text);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private interface JsonSource {
+        void write(JsonWriter writer) throws IOException;
+    }
+
+    private static void json(DataOutputStream out, JsonSource source) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(bytes, StandardCharsets.UTF_8))) {
+            writer.setSerializeNulls(false);
+            source.write(writer);
+        }
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    private synchronized void compactIfWasteful() throws IOException {
+        long dead = channel.size() - FILE_HEADER - liveBytes;
+        if (dead > Math.max(liveBytes, COMPACT_THRESHOLD)) compact();
+    }
+
+    /** rewrites the file with only the newest record for every key that is not outdated, and opens that */
+    private synchronized void compact() throws IOException {
+        long oldest = System.currentTimeMillis() - maxAge;
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        Map<String, Stored> moved = new HashMap<>();
+        try (FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+            header.putInt(MAGIC).putInt(FORMAT).flip();
+            target.write(header);
+            long position = FILE_HEADER;
+            for (Map.Entry<String, Stored> entry : records.entrySet()) {
+                Stored record = entry.getValue();
+                if (record.writtenAt < oldest) continue;
+                for (long copied = 0; copied < record.size; )
+                    copied += channel.transferTo(record.offset + copied, record.size - copied, target);
+                moved.put(entry.getKey(), record.moveTo(position));
+                position += record.size;
+            }
+        }
+        channel.close();
+        try {
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the old file is still mapped on some systems, compact next time
+            Files.deleteIfExists(compacted);
+            moved = new HashMap<>(records);
+        }
+        reopen(moved);
+    }
+
+    /** opens the file again after compaction, records that were looked up already stay consumed */
+    private void reopen(Map<String, Stored> index) throws IOException {
+        channel = lock(file);
+        long size = channel.size();
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, Integer.MAX_VALUE));
+        for (Map.Entry<String, Integer> entry : offsets.entrySet()) {
+            Stored record = index.get(entry.getKey());
+            // a newer value might be cached in the meantime, that one stays removed
+            if (record == null || record.offset + record.size > mapped.capacity())
+                offsets.remove(entry.getKey(), entry.getValue());
+            else
+                offsets.replace(entry.getKey(), entry.getValue(), (int) record.offset);
+        }
+        records.clear();
+        records.putAll(index);
+        liveBytes = 0;
+        for (Stored record : index.values()) liveBytes += record.size;
+        channel.position(size);
+    }
+    //endregion
+
+    /** writes pending records and closes the file */
+    @Override
+    public synchronized void close() throws IOException {
+        writer.shutdown();
+        try {
+            flush();
+        } finally {
+            channel.close();
+            mapped = null;
+        }
+    }
+
+    /** reads a buffer without copying it */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) return -1;
+            length = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, length);
+            return length;
+        }
+    }
+
+}
@@ -1,19 +1,30 @@
 package de.dosmike.spongepowered.oreapi;
 
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import de.dosmike.spongepowered.oreapi.codec.GsonCodec;
+import de.dosmike.spongepowered.oreapi.codec.JsonCodec;
+import de.dosmike.spongepowered.oreapi.limiter.AdaptiveLimiter;
+import de.dosmike.spongepowered.oreapi.limiter.Limiter;
+import de.dosmike.spongepowered.oreapi.limiter.LimiterClient;
 import de.dosmike.spongepowered.oreapi.limiter.RateLimiter;
 import de.dosmike.spongepowered.oreapi.netobject.OreSession;
+import de.dosmike.spongepowered.oreapi.utility.TracingThreadFactory;
+import org.jetbrains.annotations.Nullable;
 
 import javax.net.ssl.HttpsURLConnection;
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.*;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * This is the "business in the back" class of {@link OreApiV2}. This class does the basic work nobody else wants to do.
@@ -31,34 +42,86 @@ public class ConnectionManager {
 
 //    public static final String baseUrl = "https://ore.spongepowered.org/";
     public static final String baseUrl = "https://staging-ore-vue.spongeproject.net/";
-    private static final JsonParser parser = new JsonParser();
     final String application;
     private String apiKey = null;
 
     /** rate limiter is static, because we don't want connection spam through
      * different plugins */
     static RateLimiter limiter = null;
+    private static int limiterConcurrency = RateLimiter.DEFAULT_CONCURRENCY;
+    private static Limiter limiterPolicy = null;
+    /** completes futures for instances that did not specify a completion executor */
+    private static ExecutorService completionPool = null;
     private static List<OreApiV2> instances = new LinkedList<>();
     OreSession session;
     ObjectCache cache;
+    /** identifies requests from this connection manager in the shared limiter */
+    final LimiterClient client;
+    /** user callbacks run here, and not on the limiter */
+    final Executor completion;
+    /** turns response bodies into netobjects */
+    final JsonCodec codec;
 
-    private ConnectionManager(String application) {
+    private ConnectionManager(String application, int share, @Nullable Executor completion, JsonCodec codec, ObjectCache cache) {
         this.application = application;
+        this.codec = codec;
+        this.client = new LimiterClient(share);
         session = new OreSession();
         if (limiter == null) {
-            limiter = new RateLimiter();
+            limiter = new RateLimiter(limiterPolicy != null ? limiterPolicy : new AdaptiveLimiter(), limiterConcurrency);
             limiter.start();
         }
-        cache = new ObjectCache();
+        if (completion == null) {
+            if (completionPool == null)
+                completionPool = Executors.newCachedThreadPool(new TracingThreadFactory());
+            completion = completionPool;
+        }
+        this.completion = completion;
+        this.cache = cache;
     }
 
     /** Don't call this unless all connections are complete.
-     * This function will terminate the limiter, effectively preventing further calls through {@link OreApiV2} */
+     * This function will close all {@link OreApiV2} instances and terminate the limiter. Instances built
+     * afterwards start a new limiter */
     public static void terminate() {
-        instances.forEach(OreApiV2::close);
-        limiter.halt();
+        //closing removes the instance from the list
+        new ArrayList<>(instances).forEach(OreApiV2::close);
+        //instances built afterwards need a new limiter and pool
+        if (limiter != null) {
+            limiter.halt();
+            limiter = null;
+        }
+        if (completionPool != null) {
+            completionPool.shutdown();
+            completionPool = null;
+        }
         System.out.println("Closed Connection Manager");
     }
+    /**
+     * Set how many requests may be in flight at the same time. This is shared across all {@link OreApiV2}
+     * instances, as the rate limiter is. The rate limit is still honoured, this only allows multiple
+     * slow requests to run in parallel, making use of the rate limit budget.
+     *
+     * @param concurrency the maximum amount of concurrent requests, at least 1
+     */
+    public static void setConcurrency(int concurrency) {
+        if (concurrency < 1) throw new IllegalArgumentException("Concurrency has to be at least 1");
+        limiterConcurrency = concurrency;
+        if (limiter != null) limiter.setConcurrency(concurrency);
+    }
+    /**
+     * Set the limiter that decides when the next request may be made. This is shared across all {@link OreApiV2}
+     * instances, and has to be set before the first instance is built. By default an {@link AdaptiveLimiter} is
+     * used that backs off when throttled, but never exceeds 80 requests per minute. Pass an {@link AdaptiveLimiter}
+     * with a higher maximum rate, if the server you're talking to allows for that.
+     *
+     * @param limiter the limiter for all requests, null for the default
+     * @throws IllegalStateException if an instance was already built
+     */
+    public static void setLimiter(@Nullable Limiter limiter) {
+        if (ConnectionManager.limiter != null) throw new IllegalStateException("The rate limiter is already running");
+        limiterPolicy = limiter;
+    }
     static void notifyClosed(OreApiV2 instance) {
         if (!instances.remove(instance))
             throw new IllegalStateException("This instance was already closed!");
@@ -79,12 +142,61 @@ public class ConnectionManager {
         connection.setReadTimeout(5000);
         connection.setRequestProperty("User-Agent", application);
         connection.setRequestProperty("Content-Type", "application/json");
+        connection.setRequestProperty("Accept-Encoding", ACCEPT_ENCODING);
         return connection;
     }
-    static JsonObject parseJson(HttpsURLConnection connection) throws IOException {
-        JsonObject jobj = parser.parse(new InputStreamReader(connection.getInputStream())).getAsJsonObject();
-        System.out.println(jobj.toString());
-        return jobj;
+    /** content encodings understood by {@link #decode} */
+    static final String ACCEPT_ENCODING = "gzip, deflate";
+    /**
+     * Wraps the response body in a buffered reader, decompressing it on the fly if the server
+     * used one of the encodings in {@link #ACCEPT_ENCODING}.
+     *
+     * @param connection the connection that received the response
+     * @param body       the input or error stream of the connection
+     * @return a reader for the body text
+     */
+    static Reader decode(HttpsURLConnection connection, InputStream body) throws IOException {
+        String encoding = connection.getContentEncoding();
+        if (encoding != null) encoding = encoding.trim().toLowerCase(Locale.ROOT);
+        if ("gzip".equals(encoding) || "x-gzip".equals(encoding))
+            body = new GZIPInputStream(body, 8192);
+        else if ("deflate".equals(encoding))
+            body = new InflaterInputStream(body, new Inflater(), 8192);
+        else
+            body = new BufferedInputStream(body, 8192);
+        return new InputStreamReader(body, StandardCharsets.UTF_8);
+    }
+    /** reads a response body through one of the methods of the {@link JsonCodec} */
+    interface BodyDecoder<T> {
+        T read(JsonCodec codec, Reader body) throws IOException;
+    }
+    /**
+     * Passes the decompressed response body to the json codec of this instance and closes it afterwards.
+     *
+     * @param connection the connection that received the response
+     * @param decoder    picks the codec method for the response
+     */
+    <T> T readJson(HttpsURLConnection connection, BodyDecoder<T> decoder) throws IOException {
+        try (Reader body = decode(connection, connection.getInputStream())) {
+            return decoder.read(codec, body);
+        }
+    }
+    /**
+     * Reads and closes what is left of the response. Only then the connection goes back into the keep-alive
+     * cache of the {@link java.net.HttpURLConnection}, so the next request to the api can reuse it instead of
+     * doing another TCP and TLS handshake. Use this for responses where the body is not parsed.
+     */
+    static void release(HttpsURLConnection connection) {
+        try {
+            InputStream in = connection.getResponseCode() >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            if (in == null) return;
+            byte[] buffer = new byte[1024];
+            try {
+                while (in.read(buffer) >= 0) ;
+            } finally {
+                in.close();
+            }
+        } catch (IOException ignore) {}
     }
     public OreSession getSession() {
         return session;
@@ -105,7 +217,7 @@ public class ConnectionManager {
                 tryPrintErrorBody(connection);
                 return false;
             }
-            session = new OreSession(parseJson(connection));
+            session = readJson(connection, JsonCodec::readSession);
             return session.isAlive();
         } catch (IOException e) {
             e.printStackTrace();
@@ -126,6 +238,7 @@ public class ConnectionManager {
                 tryPrintErrorBody(connection);
                 return false;
             }
+            release(connection);
             session.destroy();
             return true;
         } catch (IOException e) {
@@ -139,7 +252,8 @@ public class ConnectionManager {
             System.err.println("Error Body for response "+connection.getResponseCode()+": "+connection.getResponseMessage());
             InputStream in = connection.getErrorStream();
             if (in != null) {
-                BufferedReader br = new BufferedReader(new InputStreamReader(connection.getErrorStream()));
+                //closing the reader releases the connection for reuse
+                BufferedReader br = new BufferedReader(decode(connection, in));
                 String line;
                 while ((line = br.readLine()) != null)
                     System.err.println(line);
@@ -153,6 +267,10 @@ public class ConnectionManager {
     public static class Builder {
         private String apiKey = null;
         private String application = "jOreApi/1.2 (by DosMike; Ore API V2)";
+        private int share = 1;
+        private Executor completion = null;
+        private JsonCodec codec = null;
+        private ObjectCache cache = null;
 
         private Builder() {}
 
@@ -176,8 +294,58 @@ public class ConnectionManager {
             return Builder.this;
         }
 
+        /**
+         * The rate limiter is shared between all api instances, and takes turns between them.
+         * By default every instance gets one request per turn, with this you can increase the
+         * amount of requests this instance may make per turn, while other instances are waiting.
+         * If no other instance is waiting, this instance can use the whole budget.
+         *
+         * @param share the relative amount of requests this instance gets, at least 1
+         */
+        public Builder setShare(int share) {
+            if (share < 1) throw new IllegalArgumentException("Share has to be at least 1");
+            this.share = share;
+            return Builder.this;
+        }
+
+        /**
+         * Futures returned by this api instance are completed through this executor, meaning all stages
+         * you attach without explicit executor run there. By default a separate pool is used, so slow
+         * callbacks can not stall the rate limiter that is shared with other instances.
+         *
+         * @param executor the executor to complete futures with, null for the default pool
+         */
+        public Builder setCompletionExecutor(@Nullable Executor executor) {
+            this.completion = executor;
+            return Builder.this;
+        }
+
+        /**
+         * Responses are decoded with this codec. By default the gson based {@link GsonCodec} is used,
+         * other json libraries can be plugged in by implementing {@link JsonCodec}.
+         *
+         * @param codec the codec to read responses with, null for the default
+         */
+        public Builder setJsonCodec(@Nullable JsonCodec codec) {
+            this.codec = codec;
+            return Builder.this;
+        }
+
+        /**
+         * Projects and versions are cached in this cache. By default they're kept for 5 minutes without limit,
+         * use {@link ObjectCache#builder()} to limit the amount of entries or memory on small hosts.
+         * The cache is closed with the instance, so a persisted cache can be used by the next instance.
+         *
+         * @param cache the cache to use, null for the default
+         */
+        public Builder setCache(@Nullable ObjectCache cache) {
+            this.cache = cache;
+            return Builder.this;
+        }
+
         public OreApiV2 build() {
-            ConnectionManager connection = new ConnectionManager(application);
+            ConnectionManager connection = new ConnectionManager(application, share, completion,
+                    codec != null ? codec : new GsonCodec(), cache != null ? cache : new ObjectCache());
             connection.withApiKey(apiKey);
             OreApiV2 instance = new OreApiV2(connection);
             instances.add(instance);
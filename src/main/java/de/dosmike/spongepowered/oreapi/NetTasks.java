@@ -1,15 +1,16 @@
 package de.dosmike.spongepowered.oreapi;
 
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import de.dosmike.spongepowered.oreapi.codec.JsonCodec;
 import de.dosmike.spongepowered.oreapi.exception.MissingPermissionException;
 import de.dosmike.spongepowered.oreapi.exception.NoResultException;
+import de.dosmike.spongepowered.oreapi.limiter.ServerFeedback;
 import de.dosmike.spongepowered.oreapi.netobject.*;
+import de.dosmike.spongepowered.oreapi.utility.CacheValidator;
 import org.jetbrains.annotations.Nullable;
 
 import javax.net.ssl.HttpsURLConnection;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.util.Collection;
@@ -18,6 +19,7 @@ import java.util.Optional;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import static de.dosmike.spongepowered.oreapi.ConnectionManager.release;
 import static de.dosmike.spongepowered.oreapi.ConnectionManager.tryPrintErrorBody;
 
 /**
@@ -40,20 +42,31 @@ class NetTasks {
 
     private static HttpsURLConnection connect(ConnectionManager connection, String queryURI) throws IOException {
         auth(connection);
-        ConnectionManager.limiter.takeRequest();
+        try {
+            ConnectionManager.limiter.takeRequest();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting for the rate limiter");
+        }
         return connection.session.authenticate(connection.createConnection(queryURI));
     }
 
+    /** reports rate limit information from the response to the limiter, this performs the request if it didn't happen yet */
+    private static void feedback(HttpsURLConnection connection) throws IOException {
+        ServerFeedback feedback = ServerFeedback.fromResponse(connection.getResponseCode(), connection.getHeaderFields());
+        ConnectionManager.limiter.feedback(feedback);
+    }
+
     static Supplier<OreProjectList> projectSearch(ConnectionManager cm, OreProjectFilter filter) {
         return ()->{try {
             HttpsURLConnection connection = connect(cm, "/projects?"+filter.toString());
             connection.setDoInput(true);
             connection.setRequestMethod("GET");
+            feedback(connection);
             if (connection.getResponseCode() < 200 || connection.getResponseCode() >= 400) {
                 tryPrintErrorBody(connection);
                 throw connection.getResponseCode()==403?new MissingPermissionException(OrePermission.View_Public_Info):new NoResultException(connection.getResponseMessage());
             }
-            OreProjectList resultList = new OreProjectList(ConnectionManager.parseJson(connection), OreProject.class, filter);
+            OreProjectList resultList = cm.readJson(connection, (codec, body)->codec.readProjectList(body, filter));
             for (OreProject p : resultList.getResult())
                 cm.cache.cacheProject(p);
             return resultList;
@@ -67,11 +80,19 @@ class NetTasks {
             HttpsURLConnection connection = connect(cm, "/projects/"+ namespace.toURLEncode());
             connection.setRequestMethod("GET");
             connection.setDoInput(true);
+            Optional<ObjectCache.Validated<OreProject>> cached = cm.cache.revalidatableProject(namespace);
+            cached.ifPresent(c->c.validator.applyTo(connection));
+            feedback(connection);
+            if (connection.getResponseCode() == HttpsURLConnection.HTTP_NOT_MODIFIED && cached.isPresent()) {
+                release(connection);
+                return cm.cache.cacheProject(cached.get().value, cached.get().validator);
+            }
             if (connection.getResponseCode() < 200 || connection.getResponseCode() >= 400) {
                 if (connection.getResponseCode()!=404) tryPrintErrorBody(connection);
+                else release(connection);
                 throw connection.getResponseCode()==403?new MissingPermissionException(OrePermission.View_Public_Info):new NoResultException(connection.getResponseMessage());
             }
-            return cm.cache.cacheProject(new OreProject(ConnectionManager.parseJson(connection)));
+            return cm.cache.cacheProject(cm.readJson(connection, JsonCodec::readProject), CacheValidator.fromResponse(connection));
         } catch (IOException e) {
             throw new NoResultException(e);
         }};
@@ -102,11 +123,12 @@ class NetTasks {
             HttpsURLConnection connection = connect(cm,totalQuery);
             connection.setRequestMethod("GET");
             connection.setDoInput(true);
+            feedback(connection);
             if (connection.getResponseCode() < 200 || connection.getResponseCode() >= 400) {
                 tryPrintErrorBody(connection);
                 throw connection.getResponseCode()==403?new MissingPermissionException(OrePermission.View_Public_Info):new NoResultException(connection.getResponseMessage());
             }
-            OreVersionList resultList = new OreVersionList(ConnectionManager.parseJson(connection), project, OreVersion.class, pagination);
+            OreVersionList resultList = cm.readJson(connection, (codec, body)->codec.readVersionList(body, project, pagination));
             for (OreVersion v : resultList.getResult())
                 cm.cache.cacheVersion(project.getPluginId().toLowerCase(), v);
             return resultList;
@@ -120,11 +142,19 @@ class NetTasks {
             HttpsURLConnection connection = connect(cm,"/projects/"+ project.getNamespace().toURLEncode() +"/versions/"+ URLEncoder.encode(versionName, "UTF-8"));
             connection.setRequestMethod("GET");
             connection.setDoInput(true);
+            Optional<ObjectCache.Validated<OreVersion>> cached = cm.cache.revalidatableVersion(project.getPluginId(), versionName);
+            cached.ifPresent(c->c.validator.applyTo(connection));
+            feedback(connection);
+            if (connection.getResponseCode() == HttpsURLConnection.HTTP_NOT_MODIFIED && cached.isPresent()) {
+                release(connection);
+                return cm.cache.cacheVersion(project.getPluginId(), cached.get().value, cached.get().validator);
+            }
             if (connection.getResponseCode() < 200 || connection.getResponseCode() >= 400) {
                 if (connection.getResponseCode()!=404) tryPrintErrorBody(connection);
+                else release(connection);
                 throw connection.getResponseCode()==403?new MissingPermissionException(OrePermission.View_Public_Info):new NoResultException(connection.getResponseMessage());
             }
-            return cm.cache.cacheVersion(project.getPluginId(), new OreVersion(project.toReference(), ConnectionManager.parseJson(connection)));
+            return cm.cache.cacheVersion(project.getPluginId(), cm.readJson(connection, (codec, body)->codec.readVersion(body, project.toReference())), CacheValidator.fromResponse(connection));
         } catch (IOException e) {
             throw new NoResultException(e);
         }};
@@ -135,13 +165,17 @@ class NetTasks {
             HttpsURLConnection connection = connect(cm,"/projects/"+ version.getProjectRef().getNamespace().toURLEncode() +"/versions/"+ version.getURLSafeName()+"/changelog");
             connection.setRequestMethod("GET");
             connection.setDoInput(true);
+            feedback(connection);
             if (connection.getResponseCode() < 200 || connection.getResponseCode() >= 400) {
                 if (connection.getResponseCode()!=404) tryPrintErrorBody(connection);
+                else release(connection);
                 throw connection.getResponseCode()==403?new MissingPermissionException(OrePermission.View_Public_Info):new NoResultException(connection.getResponseMessage());
             }
-            String changelog = ConnectionManager.parseJson(connection).get("changelog").getAsString();
+            String changelog = cm.readJson(connection, (codec, body)->codec.readString(body, "changelog"));
             System.out.println(changelog);
             version.updateChangelog(changelog);
+            //weigh the version again, changelogs are the largest part of it
+            cm.cache.cacheVersion(version.getProjectRef().getPluginId(), version);
             return changelog;
         } catch (IOException e) {
             throw new NoResultException(e);
@@ -169,14 +203,15 @@ class NetTasks {
                 connection.setInstanceFollowRedirects(true);
                 connection.setRequestProperty("User-Agent", cm.application);
                 connection.setRequestProperty("Content-Type", "application/json");
+                connection.setRequestProperty("Accept-Encoding", ConnectionManager.ACCEPT_ENCODING);
                 connection.setRequestMethod("GET");
                 connection.setDoInput(true);
+                feedback(connection);
                 if (connection.getResponseCode() < 200 || connection.getResponseCode() >= 400) {
                     tryPrintErrorBody(connection);
                     throw connection.getResponseCode()==403?new MissingPermissionException():new NoResultException(connection.getResponseMessage());
                 }
-                JsonObject response = new JsonParser().parse(new InputStreamReader(connection.getInputStream())).getAsJsonObject();
-                String string = response.get("url").getAsString();
+                String string = cm.readJson(connection, (codec, body)->codec.readString(body, "url"));
                 return new URL(string);
             } catch (Exception e) {
                 throw new NoResultException(e);
@@ -189,11 +224,13 @@ class NetTasks {
             HttpsURLConnection connection = connect(cm,"/permissions?"+query);
             connection.setRequestMethod("GET");
             connection.setDoInput(true);
+            feedback(connection);
             if (connection.getResponseCode() < 200 || connection.getResponseCode() >= 400) {
                 if (connection.getResponseCode()!=404) tryPrintErrorBody(connection);
+                else release(connection);
                 throw new NoResultException(connection.getResponseMessage());
             }
-            return new OrePermissionGrant(ConnectionManager.parseJson(connection));
+            return cm.readJson(connection, JsonCodec::readPermissions);
         } catch (IOException e) {
             throw new NoResultException(e);
         }};
@@ -207,11 +244,13 @@ class NetTasks {
             HttpsURLConnection connection = connect(cm,fullQuery);
             connection.setRequestMethod("GET");
             connection.setDoInput(true);
+            feedback(connection);
             if (connection.getResponseCode() < 200 || connection.getResponseCode() >= 400) {
                 if (connection.getResponseCode()!=404) tryPrintErrorBody(connection);
+                else release(connection);
                 throw new NoResultException(connection.getResponseMessage());
             }
-            return ConnectionManager.parseJson(connection).get("result").getAsBoolean();
+            return cm.readJson(connection, (codec, body)->codec.readBoolean(body, "result"));
         } catch (IOException e) {
             throw new NoResultException(e);
         }};
@@ -1,73 +1,316 @@
 package de.dosmike.spongepowered.oreapi;
 
 import de.dosmike.spongepowered.oreapi.netobject.*;
-import de.dosmike.spongepowered.oreapi.utility.CachingCollection;
+import de.dosmike.spongepowered.oreapi.utility.CacheValidator;
+import de.dosmike.spongepowered.oreapi.utility.ExpiringMap;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
 
-public class ObjectCache {
+/**
+ * Keeps projects and versions for a few minutes. Projects are indexed by namespace and plugin id,
+ * versions by plugin id and name. Lookups are lock free hash lookups, so user threads can read while
+ * the limiter thread writes responses into the cache.
+ * <br>
+ * By default the cache is not bounded. Caches created through the {@link #builder()} can be limited
+ * in entries or estimated bytes, and evict projects and versions that were used least frequently,
+ * or persisted to a file to start warm after a restart.
+ */
+public class ObjectCache implements Closeable {
 
-    private CachingCollection<OreProject> oreProjectCache = new CachingCollection<>(5, TimeUnit.MINUTES);
+    /** how many entries with validators are kept after they expired from an unbounded cache */
+    private static final int REVALIDATION_CAPACITY = 512;
+
+    /** an entity that can be revalidated with the server, even after it expired from the cache */
+    static class Validated<T> {
+        final T value;
+        final CacheValidator validator;
+        Validated(T value, CacheValidator validator) {
+            this.value = value;
+            this.validator = validator;
+        }
+    }
+    /**
+     * Validators are usually still good after a day, but the server decides that. The entities are held by
+     * these maps after they expired from the cache, so they're bounded by the same limits as the cache.
+     */
+    private static <K, V> ExpiringMap<K, Validated<V>> revalidationMap(Builder builder, ToIntFunction<V> estimateBytes) {
+        ExpiringMap.Builder<K, Validated<V>> map = ExpiringMap.builder(1, TimeUnit.DAYS);
+        if (builder.maximumEntries > 0)
+            map.maximumSize(builder.maximumEntries);
+        else if (builder.maximumBytes > 0)
+            map.maximumWeight(builder.maximumBytes, (key, validated) -> estimateBytes.applyAsInt(validated.value));
+        else
+            map.maximumSize(REVALIDATION_CAPACITY);
+        if (builder.softValues) map.softValues();
+        return map.build();
+    }
+
+    /** keeps projects and versions across restarts, null if not persisted */
+    @Nullable
+    private final CacheLog log;
+    /** primary project index, the plugin id index points into this one */
+    private final ExpiringMap<OreNamespace, OreProject> projectsByNamespace;
+    /** lowercase plugin id to namespace, entries are checked against the primary index on lookup */
+    private final ConcurrentHashMap<String, OreNamespace> namespacesByPluginId = new ConcurrentHashMap<>();
+    /** by {@link #versionKey} */
+    private final ExpiringMap<String, OreVersion> versionsByName;
+
+    public ObjectCache() {
+        this(5, TimeUnit.MINUTES);
+    }
+    /** timeSpan and timeUnit specify how long projects and versions are served from the cache */
+    public ObjectCache(long timeSpan, TimeUnit timeUnit) {
+        this(builder().expireAfter(timeSpan, timeUnit));
+    }
+    private ObjectCache(Builder builder) {
+        ExpiringMap.Builder<OreNamespace, OreProject> projects = ExpiringMap.<OreNamespace, OreProject>builder(builder.timeSpan, builder.timeUnit)
+                .removalListener((namespace, project) -> {
+                    //collected soft values are pruned from the index in poke()
+                    if (project != null) unindex(pluginKey(project.getPluginId()), namespace);
+                });
+        ExpiringMap.Builder<String, OreVersion> versions = ExpiringMap.builder(builder.timeSpan, builder.timeUnit);
+        if (builder.maximumEntries > 0) {
+            projects.maximumSize(builder.maximumEntries);
+            versions.maximumSize(builder.maximumEntries);
+        } else if (builder.maximumBytes > 0) {
+            projects.maximumWeight(builder.maximumBytes, (namespace, project) -> estimateBytes(project));
+            versions.maximumWeight(builder.maximumBytes, (key, version) -> estimateBytes(version));
+        }
+        if (builder.softValues) {
+            projects.softValues();
+            versions.softValues();
+        }
+        projectsByNamespace = projects.build();
+        versionsByName = versions.build();
+        oreProjectValidators = revalidationMap(builder, ObjectCache::estimateBytes);
+        oreVersionValidators = revalidationMap(builder, ObjectCache::estimateBytes);
+        if (builder.file != null) {
+            try {
+                log = new CacheLog(builder.file, builder.maxAge);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not open cache file " + builder.file, e);
+            }
+        } else log = null;
+    }
+
+    public static class Builder {
+        private long timeSpan = 5;
+        private TimeUnit timeUnit = TimeUnit.MINUTES;
+        private long maximumEntries = 0;
+        private long maximumBytes = 0;
+        private boolean softValues = false;
+        private Path file = null;
+        private long maxAge = 0;
+
+        private Builder() {}
+
+        /** How long projects and versions are served from the cache, 5 minutes by default */
+        public Builder expireAfter(long timeSpan, TimeUnit timeUnit) {
+            this.timeSpan = timeSpan;
+            this.timeUnit = timeUnit;
+            return Builder.this;
+        }
+
+        /**
+         * Keep at most this amount of projects, and at most this amount of versions. Projects and versions
+         * that are kept after they expired, to revalidate them with the server, are limited to the same amount
+         * separately, so up to twice this amount can be held in total.
+         * This replaces a limit set with {@link #maximumBytes}.
+         */
+        public Builder maximumEntries(long entries) {
+            if (entries < 1) throw new IllegalArgumentException("Maximum entries have to be at least 1");
+            this.maximumEntries = entries;
+            this.maximumBytes = 0;
+            return Builder.this;
+        }
+
+        /**
+         * Keep projects up to this estimated heap size, and versions up to this size. Versions with
+         * changelog and projects with long descriptions weigh more. Projects and versions that are kept after
+         * they expired, to revalidate them with the server, count extra: they're limited to the same size
+         * separately, so the cache can take up to twice this size. Entries that are in both only take the
+         * memory once, the full amount is only reached if many entries expired recently.
+         * This replaces a limit set with {@link #maximumEntries}.
+         */
+        public Builder maximumBytes(long bytes) {
+            if (bytes < 1) throw new IllegalArgumentException("Maximum bytes have to be at least 1");
+            this.maximumBytes = bytes;
+            this.maximumEntries = 0;
+            return Builder.this;
+        }
+
+        /**
+         * Projects and versions that are evicted because of the limit are still served from soft
+         * references, until the garbage collector needs the memory or they expire. This applies to the
+         * entries that are kept for revalidation as well.
+         */
+        public Builder softValues() {
+            this.softValues = true;
+            return Builder.this;
+        }
+
+        /**
+         * Projects and versions are also written to this file in the background, and the next cache
+         * using the file serves them until they're older than maxAge, instead of requesting them again
+         * after a restart. Only one cache at a time can use the file.
+         *
+         * @param maxAge how long a project or version from the file may be served after it was written
+         */
+        public Builder persistTo(Path file, long maxAge, TimeUnit timeUnit) {
+            this.file = file;
+            this.maxAge = timeUnit.toMillis(maxAge);
+            return Builder.this;
+        }
+
+        /** @throws UncheckedIOException if the file for {@link #persistTo} could not be opened */
+        public ObjectCache build() {
+            return new ObjectCache(Builder.this);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /** rough retained heap of a decoded project, lazy sub objects are counted as their typical size */
+    static int estimateBytes(OreProject project) {
+        return 800 + 2 * (length(project.getName()) + length(project.getDescription()) + length(project.getUrlIcon()));
+    }
+    /** rough retained heap of a decoded version, the changelog usually dominates once it was fetched */
+    static int estimateBytes(OreVersion version) {
+        return 600 + 2 * (length(version.getName()) + length(version.getChangelog().orElse(null)))
+                + 80 * version.getDependencies().length;
+    }
+    private static int length(@Nullable String string) {
+        return string == null ? 0 : string.length();
+    }
+
+    private static String pluginKey(String pluginId) {
+        return pluginId.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Removes the plugin id from the index, unless the namespace holds a project with that plugin id again.
+     * A concurrent {@link #remember} might have just cached the project again, and updates the index after it
+     * put the project, so checking within the index update can't miss it.
+     */
+    private void unindex(String pluginId, OreNamespace namespace) {
+        namespacesByPluginId.computeIfPresent(pluginId, (key, indexed) -> {
+            if (!indexed.equals(namespace)) return indexed;
+            OreProject current = projectsByNamespace.peek(namespace);
+            return current != null && pluginKey(current.getPluginId()).equals(key) ? indexed : null;
+        });
+    }
+
+    /** caches the project, or resets the lifespan if it was cached already */
     public OreProject cacheProject(OreProject project) {
-        oreProjectCache.add(project);
+        if (log != null) log.write(CacheLog.projectKey(pluginKey(project.getPluginId())), project);
+        return remember(project);
+    }
+    /** puts the project into memory only */
+    private OreProject remember(OreProject project) {
+        OreNamespace namespace = project.getNamespace();
+        String pluginId = pluginKey(project.getPluginId());
+        OreProject previous = projectsByNamespace.put(namespace, project);
+        if (previous != null && !pluginKey(previous.getPluginId()).equals(pluginId))
+            unindex(pluginKey(previous.getPluginId()), namespace);
+        namespacesByPluginId.put(pluginId, namespace);
         return project;
     }
     public Optional<OreProject> project(OreProjectReference reference) {
         if (reference == null)
             return Optional.empty();
         else if (reference.getNamespace() == null)
-            return oreProjectCache.stream().filter(e->e.getPluginId().equalsIgnoreCase(reference.getPluginId())).findFirst();
+            return project(reference.getPluginId());
         else
-            return oreProjectCache.stream().filter(e->e.getNamespace().equals(reference.getNamespace())).findFirst();
+            return project(reference.getNamespace());
     }
     public Optional<OreProject> project(String pluginId) {
-        return oreProjectCache.stream().filter(e->e.getPluginId().equalsIgnoreCase(pluginId)).findFirst();
+        String key = pluginKey(pluginId);
+        OreNamespace namespace = namespacesByPluginId.get(key);
+        Optional<OreProject> project = Optional.empty();
+        if (namespace != null) {
+            //the namespace might have been taken over by another project in the meantime
+            project = Optional.ofNullable(projectsByNamespace.get(namespace)).filter(p->pluginKey(p.getPluginId()).equals(key));
+            if (!project.isPresent()) unindex(key, namespace);
+        }
+        if (!project.isPresent() && log != null)
+            project = log.project(CacheLog.projectKey(key)).map(this::remember);
+        return project;
     }
     public Optional<OreProject> project(OreNamespace namespace) {
-        return oreProjectCache.stream().filter(e->e.getNamespace().equals(namespace)).findFirst();
+        Optional<OreProject> project = Optional.ofNullable(projectsByNamespace.get(namespace));
+        if (!project.isPresent() && log != null)
+            project = log.project(namespace).map(this::remember);
+        return project;
+    }
+    private final ExpiringMap<OreNamespace, Validated<OreProject>> oreProjectValidators;
+    /** caches the project and remembers the validators of the response it was parsed from */
+    OreProject cacheProject(OreProject project, CacheValidator validator) {
+        if (validator != null)
+            oreProjectValidators.put(project.getNamespace(), new Validated<>(project, validator));
+        return cacheProject(project);
     }
-    private Map<String, CachingCollection<OreVersion>> oreVersionCache = new HashMap<>();
+    /** @return the last project with validators for this namespace, even if it expired from the cache */
+    Optional<Validated<OreProject>> revalidatableProject(OreNamespace namespace) {
+        return Optional.ofNullable(oreProjectValidators.get(namespace));
+    }
+    /** caches the version, or resets the lifespan if it was cached already */
     public OreVersion cacheVersion(String pluginId, OreVersion version) {
-        CachingCollection<OreVersion> cache = oreVersionCache.get(pluginId.toLowerCase());
-        if (cache == null) {
-            cache = new CachingCollection<>(5, TimeUnit.MINUTES);
-            oreVersionCache.put(pluginId.toLowerCase(), cache);
-        }
-        cache.add(version);
+        String key = versionKey(pluginId, version.getName());
+        versionsByName.put(key, version);
+        if (log != null) log.write(CacheLog.versionKey(key), version);
         return version;
     }
+    private final ExpiringMap<String, Validated<OreVersion>> oreVersionValidators;
+    private static String versionKey(String pluginId, String versionName) {
+        return pluginId.toLowerCase(Locale.ROOT)+"/"+versionName.toLowerCase(Locale.ROOT);
+    }
+    /** caches the version and remembers the validators of the response it was parsed from */
+    OreVersion cacheVersion(String pluginId, OreVersion version, CacheValidator validator) {
+        if (validator != null)
+            oreVersionValidators.put(versionKey(pluginId, version.getName()), new Validated<>(version, validator));
+        return cacheVersion(pluginId, version);
+    }
+    /** @return the last version with validators for this name, even if it expired from the cache */
+    Optional<Validated<OreVersion>> revalidatableVersion(String pluginId, String versionName) {
+        return Optional.ofNullable(oreVersionValidators.get(versionKey(pluginId, versionName)));
+    }
     public Optional<OreVersion> version(String pluginId, String versionName) {
-        CachingCollection<OreVersion> collection = oreVersionCache.get(pluginId.toLowerCase());
-        if (collection == null) return Optional.empty();
-        else return collection.stream()
-                .filter(v -> v.getName().equalsIgnoreCase(versionName))
-                .findFirst();
-    }
-
-//    public void exportState(OutputStream outputStream) throws IOException {
-//        ObjectOutputStream oos = new ObjectOutputStream(outputStream);
-//        oos.writeObject(oreProjectCache);
-//        oos.writeObject(oreVersionCache);
-//        oos.writeObject(ConnectionManager.get().session);
-//        oos.flush();
-//    }
-//    public void importState(InputStream inputStream) throws IOException, ClassNotFoundException {
-//        ObjectInputStream ois = new ObjectInputStream(inputStream);
-//        oreProjectCache = (CachingCollection<OreProject>) ois.readObject();
-//        oreVersionCache = (Map<String, CachingCollection<OreVersion>>) ois.readObject();
-//        ConnectionManager.get().session = (OreSession) ois.readObject();
-//    }
+        String key = versionKey(pluginId, versionName);
+        Optional<OreVersion> version = Optional.ofNullable(versionsByName.get(key));
+        if (!version.isPresent() && log != null)
+            version = log.version(CacheLog.versionKey(key)).map(loaded -> {
+                versionsByName.put(key, loaded);
+                return loaded;
+            });
+        return version;
+    }
 
-    public void poke() {
-        // CachingCollection.size() performs timeout check and returns the remaining size
+    /** writes projects and versions that are waiting for the background writer, if this cache is persisted */
+    public void flush() throws IOException {
+        if (log != null) log.flush();
+    }
 
-        //noinspection ResultOfMethodCallIgnored
-        oreProjectCache.size();
-        Set<String> vkeys = new HashSet<>();
-        oreVersionCache.forEach((k,v)->{if (vkeys.size()==0) vkeys.add(k);});
-        for (String k : vkeys) oreVersionCache.remove(k);
+    /** flushes and closes the file, if this cache is persisted. The cache still works in memory after that */
+    @Override
+    public void close() throws IOException {
+        if (log != null) log.close();
+    }
 
+    /**
+     * Removes all expired entries. Writes do this as well, so this is only needed to free memory
+     * after a longer time without requests.
+     */
+    public void poke() {
+        projectsByNamespace.evictExpired();
+        versionsByName.evictExpired();
+        namespacesByPluginId.entrySet().removeIf(entry -> !projectsByNamespace.containsKey(entry.getValue()));
     }
 }
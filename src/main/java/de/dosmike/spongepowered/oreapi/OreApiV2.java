@@ -1,13 +1,18 @@
 package de.dosmike.spongepowered.oreapi;
 
+import de.dosmike.spongepowered.oreapi.limiter.Priority;
 import de.dosmike.spongepowered.oreapi.netobject.*;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.util.Collection;
+import java.util.Locale;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * This class is the "party in the front" - enjoy a class with clean API<br>
@@ -21,14 +26,35 @@ import java.util.function.Supplier;
 public class OreApiV2 implements AutoCloseable {
 
     private ConnectionManager instance;
+    private final Priority priority;
+    /** time in ms a request may wait in the limiter queue, 0 for no deadline */
+    private final long timeout;
+    /** views created by {@link #withPriority} and {@link #withDeadline} are not closable, they don't own the connection */
+    private final boolean view;
 
     OreApiV2(ConnectionManager connectionManager) {
+        this(connectionManager, Priority.Normal, 0L, false);
+    }
+    private OreApiV2(ConnectionManager connectionManager, Priority priority, long timeout, boolean view) {
         instance = connectionManager;
+        this.priority = priority;
+        this.timeout = timeout;
+        this.view = view;
     }
     //region NON_API - Utility
     private ObjectCache cache() { return instance.cache; }
+    private long deadline() {
+        return timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+    }
     private <T> CompletableFuture<T> enqueue(Supplier<T> task) {
-        return ConnectionManager.limiter.enqueue(task);
+        return ConnectionManager.limiter.enqueue(task, priority, instance.client, deadline(), instance.completion);
+    }
+    /** like {@link #enqueue(Supplier)}, but attaches to an equal request that is already in flight */
+    private <T> CompletableFuture<T> enqueue(String requestKey, Supplier<T> task) {
+        return ConnectionManager.limiter.enqueueShared(requestKey, task, priority, instance.client, deadline(), instance.completion);
+    }
+    private static String permissionKey(String kind, String query, Collection<OrePermission> perms) {
+        return "permissions/"+kind+"?"+query+"&"+perms.stream().map(Enum::name).sorted().collect(Collectors.joining(","));
     }
     private static String urlencoded(String s) { try { return URLEncoder.encode(s, "UTF-8"); } catch (Throwable e) { throw new RuntimeException(e); } }
 
@@ -38,10 +64,53 @@ public class OreApiV2 implements AutoCloseable {
         return instance.destroySession();
     }
 
+    /**
+     * Get a view of this api instance, that enqueues all requests with the specified priority.
+     * Use {@link Priority#Interactive} for requests a user is waiting on and {@link Priority#Background}
+     * for bulk work like syncing, so the latter does not get in the way of the former.
+     * The view shares session and cache with this instance. Closing the view has no effect, close
+     * the instance you got from the builder instead.
+     *
+     * @param priority the priority for all requests made through the returned api
+     * @return an api instance using the specified priority
+     */
+    public OreApiV2 withPriority(Priority priority) {
+        if (instance == null) throw new IllegalStateException("This API instance was closed");
+        return new OreApiV2(instance, priority, timeout, true);
+    }
+
+    /**
+     * Get a view of this api instance, that fails requests with a {@link java.util.concurrent.TimeoutException}
+     * if they could not start within the specified time. Such requests are removed from the queue without
+     * making a request. Requests with an earlier deadline are picked first among requests of the same priority.
+     * The view shares session and cache with this instance and keeps its priority. Closing the view has no
+     * effect, close the instance you got from the builder instead.
+     *
+     * @param time the time a request may wait for the rate limiter, 0 to wait indefinitely
+     * @param unit the unit for time
+     * @return an api instance using the specified deadline
+     */
+    public OreApiV2 withDeadline(long time, TimeUnit unit) {
+        if (instance == null) throw new IllegalStateException("This API instance was closed");
+        if (time < 0) throw new IllegalArgumentException("Deadline can not be negative");
+        return new OreApiV2(instance, priority, unit.toMillis(time), true);
+    }
+
+    /** @return the priority requests made through this instance are enqueued with */
+    public Priority getPriority() {
+        return priority;
+    }
+
     @Override
     public void close() {
+        if (view) return;
         if (instance == null) throw new IllegalStateException("This API instance was closed");
         destroySession();
+        try {
+            instance.cache.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
         instance.notifyClosed(this);
         instance = null;
     }
@@ -49,39 +118,45 @@ public class OreApiV2 implements AutoCloseable {
 
     //region Permission
     public CompletableFuture<OrePermissionGrant> getPermissions() {
-        return enqueue(NetTasks.getPermissions(instance, ""));
+        return enqueue("permissions?", NetTasks.getPermissions(instance, ""));
     }
     public CompletableFuture<OrePermissionGrant> getPermissions(OreNamespace namespace) {
-        return enqueue(NetTasks.getPermissions(instance, "projectOwner="+ urlencoded(namespace.getOwner())+"&projectSlug="+ urlencoded(namespace.getSlug())));
+        String query = "projectOwner="+ urlencoded(namespace.getOwner())+"&projectSlug="+ urlencoded(namespace.getSlug());
+        return enqueue("permissions?"+query, NetTasks.getPermissions(instance, query));
     }
     public CompletableFuture<OrePermissionGrant> getPermissions(String organization) {
-        return enqueue(NetTasks.getPermissions(instance, "organizationName="+ urlencoded(organization)));
+        String query = "organizationName="+ urlencoded(organization);
+        return enqueue("permissions?"+query, NetTasks.getPermissions(instance, query));
     }
 
     public CompletableFuture<Boolean> hasAllPermissions(Collection<OrePermission> perms) {
         if (perms.isEmpty()) return CompletableFuture.completedFuture(true);
-        return enqueue(NetTasks.checkPermissions(instance, "", perms, false));
+        return enqueue(permissionKey("hasAll", "", perms), NetTasks.checkPermissions(instance, "", perms, false));
     }
     public CompletableFuture<Boolean> hasAllPermissions(OreNamespace namespace, Collection<OrePermission> perms) {
         if (perms.isEmpty()) return CompletableFuture.completedFuture(true);
-        return enqueue(NetTasks.checkPermissions(instance, "projectOwner="+ urlencoded(namespace.getOwner())+"&projectSlug="+ urlencoded(namespace.getSlug()), perms, false));
+        String query = "projectOwner="+ urlencoded(namespace.getOwner())+"&projectSlug="+ urlencoded(namespace.getSlug());
+        return enqueue(permissionKey("hasAll", query, perms), NetTasks.checkPermissions(instance, query, perms, false));
     }
     public CompletableFuture<Boolean> hasAllPermissions(String organization, Collection<OrePermission> perms) {
         if (perms.isEmpty()) return CompletableFuture.completedFuture(true);
-        return enqueue(NetTasks.checkPermissions(instance, "organizationName="+ urlencoded(organization), perms, false));
+        String query = "organizationName="+ urlencoded(organization);
+        return enqueue(permissionKey("hasAll", query, perms), NetTasks.checkPermissions(instance, query, perms, false));
     }
 
     public CompletableFuture<Boolean> hasAnyPermissions(Collection<OrePermission> perms) {
         if (perms.isEmpty()) return CompletableFuture.completedFuture(true);
-        return enqueue(NetTasks.checkPermissions(instance, "", perms, true));
+        return enqueue(permissionKey("hasAny", "", perms), NetTasks.checkPermissions(instance, "", perms, true));
     }
     public CompletableFuture<Boolean> hasAnyPermissions(OreNamespace namespace, Collection<OrePermission> perms) {
         if (perms.isEmpty()) return CompletableFuture.completedFuture(true);
-        return enqueue(NetTasks.checkPermissions(instance, "projectOwner="+ urlencoded(namespace.getOwner())+"&projectSlug="+ urlencoded(namespace.getSlug()), perms, true));
+        String query = "projectOwner="+ urlencoded(namespace.getOwner())+"&projectSlug="+ urlencoded(namespace.getSlug());
+        return enqueue(permissionKey("hasAny", query, perms), NetTasks.checkPermissions(instance, query, perms, true));
     }
     public CompletableFuture<Boolean> hasAnyPermissions(String organization, Collection<OrePermission> perms) {
         if (perms.isEmpty()) return CompletableFuture.completedFuture(true);
-        return enqueue(NetTasks.checkPermissions(instance, "organizationName="+ urlencoded(organization), perms, true));
+        String query = "organizationName="+ urlencoded(organization);
+        return enqueue(permissionKey("hasAny", query, perms), NetTasks.checkPermissions(instance, query, perms, true));
     }
     //endregion
     //region Project
@@ -91,7 +166,7 @@ public class OreApiV2 implements AutoCloseable {
      */
     public CompletableFuture<OreProjectList> projectSearch(OreProjectFilter filter) {
         //don't want to cache a search
-        return enqueue(NetTasks.projectSearch(instance, filter));
+        return enqueue("projects?"+filter.toString(), NetTasks.projectSearch(instance, filter));
     }
 
     /**
@@ -100,7 +175,7 @@ public class OreApiV2 implements AutoCloseable {
     public CompletableFuture<OreProject> getProject(OreNamespace namespace) {
         return cache().project(namespace)
                 .map(CompletableFuture::completedFuture)
-                .orElseGet(()->enqueue(NetTasks.getProject(instance, namespace)));
+                .orElseGet(()->enqueue("projects/"+namespace.toURLEncode(), NetTasks.getProject(instance, namespace)));
     }
 
     /**
@@ -113,7 +188,7 @@ public class OreApiV2 implements AutoCloseable {
     public CompletableFuture<OreProject> findProjectByPluginId(String pluginId) {
         return cache().project(pluginId)
                 .map(CompletableFuture::completedFuture)
-                .orElseGet(()->enqueue(NetTasks.findByPluginId(instance, pluginId)));
+                .orElseGet(()->enqueue("pluginId/"+pluginId.toLowerCase(Locale.ROOT), NetTasks.findByPluginId(instance, pluginId)));
     }
     //endregion
     //region Version
@@ -121,7 +196,8 @@ public class OreApiV2 implements AutoCloseable {
      * @return empty if the connection failed or no such plugin exists
      */
     public CompletableFuture<OreVersionList> listVersions(OreProjectReference project, @Nullable OrePaginationFilter pagination) {
-        return enqueue(NetTasks.listVersions(instance, project, pagination));
+        return enqueue("projects/"+project.getNamespace().toURLEncode()+"/versions?"+(pagination != null ? pagination.toString() : ""),
+                NetTasks.listVersions(instance, project, pagination));
     }
 
     /**
@@ -130,7 +206,8 @@ public class OreApiV2 implements AutoCloseable {
     public CompletableFuture<OreVersion> getVersion(OreProjectReference project, String versionName) {
         return cache().version(project.getPluginId(), versionName)
                 .map(CompletableFuture::completedFuture)
-                .orElseGet(()->enqueue(NetTasks.getVersion(instance, project, versionName)));
+                .orElseGet(()->enqueue("projects/"+project.getNamespace().toURLEncode()+"/versions/"+urlencoded(versionName),
+                        NetTasks.getVersion(instance, project, versionName)));
     }
 
     /**
@@ -143,7 +220,10 @@ public class OreApiV2 implements AutoCloseable {
         return getVersion(version.getProjectRef(), version.getName())
                 .thenCompose(v->v.getChangelog()
                         .map(CompletableFuture::completedFuture)
-                        .orElseGet(()->enqueue(NetTasks.getVerionChangelog(instance, v))));
+                        .orElseGet(()->enqueue("projects/"+v.getProjectRef().getNamespace().toURLEncode()+"/versions/"+v.getURLSafeName()+"/changelog",
+                                NetTasks.getVerionChangelog(instance, v))
+                                //the request might have been made for another instance of this version
+                                .thenApply(changelog->{ v.updateChangelog(changelog); return changelog; })));
     }
     //endregion
     //region NON_API - Version Download
@@ -154,7 +234,8 @@ public class OreApiV2 implements AutoCloseable {
      * THIS IS NOT PART OF THE API (but i include it anyway, because that might be a common goal)
      */
     public CompletableFuture<URL> getDownloadURL(OreVersion version) {
-        return enqueue(NetTasks.getDownloadURL(instance, version));
+        return enqueue("projects/"+version.getProjectRef().getNamespace().toURLEncode()+"/versions/"+version.getURLSafeName()+"/download",
+                NetTasks.getDownloadURL(instance, version));
     }
     //endregion
 
@@ -0,0 +1,79 @@
+package de.dosmike.spongepowered.oreapi.codec;
+
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import de.dosmike.spongepowered.oreapi.netobject.*;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * The default codec. Streams the body through a {@link JsonReader} into the netobjects,
+ * so no intermediate json tree is built for the larger responses.
+ */
+public class GsonCodec implements JsonCodec {
+
+    private static JsonReader stream(Reader body) {
+        JsonReader reader = new JsonReader(body);
+        reader.setLenient(true);
+        return reader;
+    }
+
+    @Override
+    public OreProjectList readProjectList(Reader body, OreProjectFilter filter) throws IOException {
+        return new OreProjectList(stream(body), OreProject.class, filter);
+    }
+
+    @Override
+    public OreProject readProject(Reader body) throws IOException {
+        return new OreProject(stream(body));
+    }
+
+    @Override
+    public OreVersionList readVersionList(Reader body, OreProjectReference project, @Nullable OrePaginationFilter pagination) throws IOException {
+        return new OreVersionList(stream(body), project, OreVersion.class, pagination);
+    }
+
+    @Override
+    public OreVersion readVersion(Reader body, OreProjectReference project) throws IOException {
+        return new OreVersion(project, stream(body));
+    }
+
+    @Override
+    public OrePermissionGrant readPermissions(Reader body) throws IOException {
+        return new OrePermissionGrant(stream(body));
+    }
+
+    @Override
+    public OreSession readSession(Reader body) throws IOException {
+        return new OreSession(new JsonParser().parse(stream(body)).getAsJsonObject());
+    }
+
+    @Nullable
+    @Override
+    public String readString(Reader body, String key) throws IOException {
+        JsonReader reader = seek(stream(body), key);
+        return reader == null ? null : reader.nextString();
+    }
+
+    @Override
+    public boolean readBoolean(Reader body, String key) throws IOException {
+        JsonReader reader = seek(stream(body), key);
+        return reader != null && reader.nextBoolean();
+    }
+
+    /** @return the reader positioned at the non-null value of the top level key, or null if there is none */
+    @Nullable
+    private static JsonReader seek(JsonReader reader, String key) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals(key) && reader.peek() != JsonToken.NULL)
+                return reader;
+            reader.skipValue();
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,65 @@
+package de.dosmike.spongepowered.oreapi.codec;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import de.dosmike.spongepowered.oreapi.netobject.*;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Reader;
+
+/**
+ * Parses the whole body into a json tree first and fills the netobjects from that.
+ * This is how responses were read before the streaming {@link GsonCodec}, it's kept
+ * as a reference for the benchmarks and for debugging decoding issues.
+ */
+public class GsonTreeCodec implements JsonCodec {
+
+    private static JsonObject tree(Reader body) {
+        return new JsonParser().parse(body).getAsJsonObject();
+    }
+
+    @Override
+    public OreProjectList readProjectList(Reader body, OreProjectFilter filter) {
+        return new OreProjectList(tree(body), OreProject.class, filter);
+    }
+
+    @Override
+    public OreProject readProject(Reader body) {
+        return new OreProject(tree(body));
+    }
+
+    @Override
+    public OreVersionList readVersionList(Reader body, OreProjectReference project, @Nullable OrePaginationFilter pagination) {
+        return new OreVersionList(tree(body), project, OreVersion.class, pagination);
+    }
+
+    @Override
+    public OreVersion readVersion(Reader body, OreProjectReference project) {
+        return new OreVersion(project, tree(body));
+    }
+
+    @Override
+    public OrePermissionGrant readPermissions(Reader body) {
+        return new OrePermissionGrant(tree(body));
+    }
+
+    @Override
+    public OreSession readSession(Reader body) {
+        return new OreSession(tree(body));
+    }
+
+    @Nullable
+    @Override
+    public String readString(Reader body, String key) {
+        JsonElement value = tree(body).get(key);
+        return value == null || value.isJsonNull() ? null : value.getAsString();
+    }
+
+    @Override
+    public boolean readBoolean(Reader body, String key) {
+        JsonElement value = tree(body).get(key);
+        return value != null && !value.isJsonNull() && value.getAsBoolean();
+    }
+
+}
@@ -0,0 +1,43 @@
+package de.dosmike.spongepowered.oreapi.codec;
+
+import de.dosmike.spongepowered.oreapi.netobject.*;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Interface for json backends, turning response bodies into netobjects.
+ * One codec is shared by all requests of an api instance, so implementations have to be thread safe.
+ * The body reader is already decompressed and closed by the caller.
+ */
+public interface JsonCodec {
+
+    /** reads a page of search results for the filter that was sent */
+    OreProjectList readProjectList(Reader body, OreProjectFilter filter) throws IOException;
+
+    OreProject readProject(Reader body) throws IOException;
+
+    /** reads a page of versions for the project, with the pagination that was sent */
+    OreVersionList readVersionList(Reader body, OreProjectReference project, @Nullable OrePaginationFilter pagination) throws IOException;
+
+    OreVersion readVersion(Reader body, OreProjectReference project) throws IOException;
+
+    OrePermissionGrant readPermissions(Reader body) throws IOException;
+
+    OreSession readSession(Reader body) throws IOException;
+
+    /**
+     * For small responses that only carry one value in the top level object.
+     * @return the string value of the key, or null if absent
+     */
+    @Nullable
+    String readString(Reader body, String key) throws IOException;
+
+    /**
+     * For small responses that only carry one value in the top level object.
+     * @return the boolean value of the key, false if absent
+     */
+    boolean readBoolean(Reader body, String key) throws IOException;
+
+}
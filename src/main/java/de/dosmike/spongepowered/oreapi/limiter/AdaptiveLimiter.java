@@ -0,0 +1,99 @@
+package de.dosmike.spongepowered.oreapi.limiter;
+
+/**
+ * This limiter adapts its rate to the feedback of the server (AIMD).
+ * Requests are spaced out evenly at the current rate. A throttled response halves the
+ * rate, and every successful response increases it by a small step again. Responses
+ * without rate limit headers only recover the rate up to the initial rate, the limiter
+ * only goes faster than that if the server reports remaining requests.
+ * Retry-After and exhausted rate limit headers additionally block all requests
+ * until the specified time.
+ * The rate always stays between the configured minimum and maximum.
+ */
+public class AdaptiveLimiter implements Limiter {
+
+    private final double minRate;
+    private final double maxRate;
+    private final double increase;
+    /** the rate responses without rate limit headers recover to */
+    private final double initialRate;
+
+    /** current rate in requests per second */
+    private double rate;
+    /** earliest time for the next request based on the rate */
+    private long nextAt = 0L;
+    /** no requests before this time, as requested by the server */
+    private long blockedUntil = 0L;
+
+    /**
+     * @param initialRate requests per second to start with
+     * @param minRate     the rate will never go below this many requests per second
+     * @param maxRate     the rate will never go above this many requests per second
+     * @param increase    requests per second added to the rate after every successful response
+     */
+    public AdaptiveLimiter(double initialRate, double minRate, double maxRate, double increase) {
+        if (minRate <= 0 || maxRate < minRate) throw new IllegalArgumentException("Invalid rate bounds");
+        if (increase < 0) throw new IllegalArgumentException("Increase can not be negative");
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.increase = increase;
+        this.rate = Math.max(minRate, Math.min(maxRate, initialRate));
+        this.initialRate = rate;
+    }
+
+    /**
+     * Starts at 80 requests per minute and goes anywhere between 15 per minute and 80 per minute.
+     * Use {@link #AdaptiveLimiter(double, double, double, double)} to allow a higher rate.
+     */
+    public AdaptiveLimiter() {
+        this(80 / 60.0, 0.25, 80 / 60.0, 0.05);
+    }
+
+    private long interval() {
+        return (long) Math.ceil(1000.0 / rate);
+    }
+
+    @Override
+    public synchronized boolean canRequest() {
+        return System.currentTimeMillis() >= Math.max(nextAt, blockedUntil);
+    }
+
+    @Override
+    public synchronized long nextRequestAt() {
+        return Math.max(System.currentTimeMillis(), Math.max(nextAt, blockedUntil));
+    }
+
+    @Override
+    public synchronized void takeRequest() {
+        nextAt = Math.max(nextAt, System.currentTimeMillis()) + interval();
+    }
+
+    @Override
+    public synchronized void onFeedback(ServerFeedback feedback) {
+        long now = System.currentTimeMillis();
+        if (feedback.isThrottled()) {
+            // multiplicative decrease
+            rate = Math.max(minRate, rate / 2);
+            long retryAt = feedback.getRetryAt() > now ? feedback.getRetryAt() : now + interval();
+            blockedUntil = Math.max(blockedUntil, retryAt);
+        } else if (feedback.getRemaining() == 0) {
+            // about to be throttled, hold the rate and wait for the window to reset
+            if (feedback.getResetAt() > now)
+                blockedUntil = Math.max(blockedUntil, feedback.getResetAt());
+        } else {
+            // additive increase, probing above the initial rate only if the server reported headroom
+            if (feedback.getRemaining() > 0)
+                rate = Math.min(maxRate, rate + increase);
+            else if (feedback.getRemaining() < 0 && rate < initialRate)
+                rate = Math.min(initialRate, rate + increase);
+            if (feedback.getRetryAt() > now)
+                blockedUntil = Math.max(blockedUntil, feedback.getRetryAt());
+        }
+    }
+
+    /** @return the current rate in requests per second */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+}
@@ -1,75 +1,75 @@
 package de.dosmike.spongepowered.oreapi.limiter;
 
-import de.dosmike.spongepowered.oreapi.utility.CachingCollection;
-
-import java.util.ArrayList;
-import java.util.concurrent.TimeUnit;
-
 /**
  * This limiter implements a way of rate limiting with
  * x requests per second and y requests per minute.
  * For each request the timestamp is saved to a maximum of
  * y requests. They decay after a minute, immediately freeing
  * up a request again.
+ * <br>
+ * The timestamps are kept in a ring buffer, newest last. Since only the
+ * n-th most recent timestamp decides whether a limit of n is hit, all
+ * checks are O(1) and there is no allocation after construction.
  */
 public class AveragingLimiter implements Limiter {
 
     private int requestsPerSecond;
     private int requestsPerMinute;
 
-    private CachingCollection<Long> requestCache = new CachingCollection<>(new ArrayList<>(requestsPerMinute), 1, TimeUnit.MINUTES);
+    private final long[] requestTimes;
+    /** index the next timestamp will be written to */
+    private int head = 0;
+    /** amount of valid timestamps in the buffer, up to its capacity */
+    private int count = 0;
 
     public AveragingLimiter(int perSecond, int perMinute) {
         requestsPerSecond = perSecond;
         requestsPerMinute = perMinute;
+        requestTimes = new long[Math.max(perSecond, perMinute)];
     }
 
     public AveragingLimiter(){
-        requestsPerSecond = 2;
-        requestsPerMinute = 80;
+        this(2, 80);
+    }
+
+    /** @return the timestamp of the n-th most recent request, 1 being the latest */
+    private long recent(int n) {
+        int index = head - n;
+        if (index < 0) index += requestTimes.length;
+        return requestTimes[index];
+    }
+
+    /** @return true if the n-th most recent request is not older than maxAge */
+    private boolean limitHit(int n, long maxAge, long now) {
+        return count >= n && now - recent(n) <= maxAge;
     }
 
     /** @return true if no limit was exceeded */
     @Override
-    public boolean canRequest() {
-        if (requestCache.size() >= requestsPerMinute) return false;
-        int lastSecond=0;
-        Long now = System.currentTimeMillis();
-        for (Long timestamp : requestCache) {
-            if (now-timestamp <= 1000) lastSecond++;
-        }
-        return lastSecond < requestsPerSecond;
+    public synchronized boolean canRequest() {
+        long now = System.currentTimeMillis();
+        return !limitHit(requestsPerMinute, 60_000L, now) && !limitHit(requestsPerSecond, 1_000L, now);
     }
 
     /** @return the unix timestamp, where the next request can be made */
     @Override
-    public long nextRequestAt() {
+    public synchronized long nextRequestAt() {
         long now = System.currentTimeMillis();
-        long oldestTimeMin = now; //oldest time within this minute expires
-        long oldestTimeSec = now; //oldest time within this second expires
-        int lastSecond=0;
-        for (long timestamp : requestCache) {
-            if (now-timestamp <= 1000) {
-                if (timestamp < oldestTimeSec) oldestTimeSec = timestamp;
-                lastSecond++;
-            }
-            if (timestamp < oldestTimeMin) oldestTimeMin = timestamp;
-        }
-        // no limit hit
-        if (requestCache.size() < requestsPerMinute && lastSecond < requestsPerSecond) return now;
-
-        //convert oldestTime timestamps to "when will they expire"
+        long next = now;
+        //convert timestamps to "when will they expire"
         // -> expires at = created at + max age
-
-        //limit for second hit, would also free minute limit if hit
-        if (lastSecond >= requestsPerSecond) return oldestTimeSec + 1_001L;
-            //minute limit was hit, wait for that to expire
-        else return oldestTimeMin + 60_001L;
+        if (limitHit(requestsPerSecond, 1_000L, now))
+            next = Math.max(next, recent(requestsPerSecond) + 1_001L);
+        if (limitHit(requestsPerMinute, 60_000L, now))
+            next = Math.max(next, recent(requestsPerMinute) + 60_001L);
+        return next;
     }
 
     @Override
-    public void takeRequest() {
-        requestCache.add(System.currentTimeMillis());
+    public synchronized void takeRequest() {
+        requestTimes[head] = System.currentTimeMillis();
+        if (++head == requestTimes.length) head = 0;
+        if (count < requestTimes.length) count++;
     }
 
 }
@@ -31,13 +31,13 @@ public class BucketLimiter implements Limiter {
     }
 
     @Override
-    public boolean canRequest() {
+    public synchronized boolean canRequest() {
         _update();
         return bucketSecond > 0 && bucketMinute > 0;
     }
 
     @Override
-    public long nextRequestAt() {
+    public synchronized long nextRequestAt() {
         _update();
         if (bucketSecond > 0 && bucketMinute > 0) return 0L;
         if (bucketSecond == 0 && bucketMinute == 0) return Math.max(resetSecondAt, resetMinuteAt);
@@ -46,7 +46,7 @@ public class BucketLimiter implements Limiter {
     }
 
     @Override
-    public void takeRequest() {
+    public synchronized void takeRequest() {
         if (bucketSecond > 0) bucketSecond--;
         if (bucketMinute > 0) bucketMinute--;
     }
@@ -0,0 +1,175 @@
+package de.dosmike.spongepowered.oreapi.limiter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This limiter implements the generic cell rate algorithm (GCRA) for any number of
+ * stacked rates, e.g. x requests per second and y requests per minute.
+ * <br>
+ * For every rate a theoretical arrival time (TAT) is tracked, that advances by the rates
+ * emission interval with every request. A request conforms, if for all rates the TAT is
+ * less than the burst tolerance ahead of now. In contrast to buckets there are no window
+ * edges where the whole budget refills at once. Within any time span of a rates period
+ * there can be at most <code>requests + burst - 1</code> requests, so with the default burst
+ * of 1 the rate is never exceeded, requests are just spaced out evenly.
+ * <br>
+ * All TATs are packed into a single {@link AtomicLong}: the upper bits hold the time of the
+ * last update in ms since this limiter was created and every rate gets a few bits to store how
+ * far its TAT is ahead of that. This makes the limiter lock and allocation free.
+ */
+public class CellRateLimiter implements Limiter {
+
+    /** minimum amount of bits left for the base time (2^36 ms are a bit over 2 years) */
+    private static final int MIN_BASE_BITS = 36;
+
+    /**
+     * Specifies an amount of requests allowed within a time span.
+     */
+    public static class Rate {
+        private final int requests;
+        private final long periodMillis;
+        private final int burst;
+
+        /**
+         * Requests are spaced out evenly, without bursts.
+         */
+        public Rate(int requests, long timeSpan, TimeUnit timeUnit) {
+            this(requests, timeSpan, timeUnit, 1);
+        }
+
+        /**
+         * @param burst how many requests can be made back to back after the limiter was idle for a while,
+         *              between 1 and requests. Keep in mind that bursts can exceed the rate within a time span.
+         */
+        public Rate(int requests, long timeSpan, TimeUnit timeUnit, int burst) {
+            if (requests < 1) throw new IllegalArgumentException("Rate requires at least one request");
+            if (burst < 1 || burst > requests) throw new IllegalArgumentException("Burst has to be between 1 and requests");
+            this.requests = requests;
+            this.periodMillis = timeUnit.toMillis(timeSpan);
+            this.burst = burst;
+            if (periodMillis < requests) throw new IllegalArgumentException("Rate can not be more than one request per ms");
+        }
+
+        public int getRequests() {
+            return requests;
+        }
+
+        public long getPeriodMillis() {
+            return periodMillis;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+    }
+
+    private final long epoch = System.currentTimeMillis();
+    /** the TAT advances this much per request, in ms */
+    private final long[] emissionInterval;
+    /** how far the TAT may be ahead of now for requests to conform, in ms */
+    private final long[] tolerance;
+    private final int[] shift;
+    private final long[] mask;
+    private final int baseShift;
+    private final AtomicLong state;
+
+    public CellRateLimiter(Rate... rates) {
+        if (rates.length == 0) throw new IllegalArgumentException("At least one rate is required");
+        emissionInterval = new long[rates.length];
+        tolerance = new long[rates.length];
+        shift = new int[rates.length];
+        mask = new long[rates.length];
+        int bits = 0;
+        for (int i = 0; i < rates.length; i++) {
+            // round up, staying on the safe side of the rate
+            emissionInterval[i] = (rates[i].periodMillis + rates[i].requests - 1) / rates[i].requests;
+            tolerance[i] = emissionInterval[i] * (rates[i].burst - 1);
+            // conforming requests never push the TAT further than this ahead
+            long horizon = tolerance[i] + emissionInterval[i];
+            int width = 64 - Long.numberOfLeadingZeros(horizon);
+            shift[i] = bits;
+            mask[i] = (1L << width) - 1;
+            bits += width;
+        }
+        if (64 - bits < MIN_BASE_BITS) throw new IllegalArgumentException("Too many or too long rates");
+        baseShift = bits;
+        state = new AtomicLong(0L); //base 0 is the epoch, all TATs are at the epoch
+    }
+
+    public CellRateLimiter(int perSecond, int perMinute) {
+        this(new Rate(perSecond, 1, TimeUnit.SECONDS), new Rate(perMinute, 1, TimeUnit.MINUTES));
+    }
+
+    public CellRateLimiter() {
+        this(2, 80);
+    }
+
+    /** ms since epoch, never earlier than the base of the current state in case the clock goes backwards */
+    private long now(long packed) {
+        return Math.max(System.currentTimeMillis() - epoch, packed >>> baseShift);
+    }
+
+    private long tat(long packed, int rate) {
+        return (packed >>> baseShift) + ((packed >>> shift[rate]) & mask[rate]);
+    }
+
+    private boolean conforms(long packed, long now) {
+        for (int i = 0; i < shift.length; i++) {
+            if (tat(packed, i) - now > tolerance[i]) return false;
+        }
+        return true;
+    }
+
+    /** advances all TATs by one request, rebased to now */
+    private long advance(long packed, long now) {
+        long next = now << baseShift;
+        for (int i = 0; i < shift.length; i++) {
+            long ahead = Math.max(tat(packed, i), now) + emissionInterval[i] - now;
+            // only requests taken against the limit can go past the mask, cap them at the max
+            next |= Math.min(ahead, mask[i]) << shift[i];
+        }
+        return next;
+    }
+
+    @Override
+    public boolean canRequest() {
+        long packed = state.get();
+        return conforms(packed, now(packed));
+    }
+
+    @Override
+    public long nextRequestAt() {
+        long packed = state.get();
+        long at = now(packed);
+        for (int i = 0; i < shift.length; i++) {
+            at = Math.max(at, tat(packed, i) - tolerance[i]);
+        }
+        return epoch + at;
+    }
+
+    /**
+     * Takes a request regardless of whether it conforms. If the limit was exceeded, the
+     * delay is capped at roughly the longest rates period.
+     */
+    @Override
+    public void takeRequest() {
+        long packed, now;
+        do {
+            packed = state.get();
+            now = now(packed);
+        } while (!state.compareAndSet(packed, advance(packed, now)));
+    }
+
+    @Override
+    public boolean tryTakeRequest() {
+        long packed, now;
+        do {
+            packed = state.get();
+            now = now(packed);
+            if (!conforms(packed, now)) return false;
+        } while (!state.compareAndSet(packed, advance(packed, now)));
+        return true;
+    }
+
+}
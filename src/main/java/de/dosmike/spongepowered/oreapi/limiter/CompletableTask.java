@@ -1,6 +1,10 @@
 package de.dosmike.spongepowered.oreapi.limiter;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 /**
@@ -22,9 +26,40 @@ public class CompletableTask<T> implements Runnable {
      * do some internal error handling.
      */
     private T result;
+    /**
+     * Used by the {@link RateLimiter} to pick the next task, only raised while the task is out of the queue
+     */
+    private volatile Priority priority;
+    private final LimiterClient client;
+    /**
+     * Unix timestamp in ms until which the task has to be started, {@link Long#MAX_VALUE} if there is no deadline
+     */
+    private volatile long deadline;
+    /** fails the task once the deadline passed, managed by the {@link RateLimiter} */
+    volatile ScheduledFuture<?> timeout;
+    /**
+     * Completes the user future, so dependent stages don't run on limiter threads.
+     * If null, the future is completed by the thread that ran the task.
+     */
+    private final Executor completion;
+    /** enqueue order, assigned by the queue to keep tasks with equal deadline in order */
+    long sequence;
+
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int DROPPED = 2;
+    private final AtomicInteger state = new AtomicInteger(QUEUED);
 
     public CompletableTask(Supplier<T> task) {
+        this(task, Priority.Normal, LimiterClient.ANONYMOUS, Long.MAX_VALUE, null);
+    }
+
+    public CompletableTask(Supplier<T> task, Priority priority, LimiterClient client, long deadline, Executor completion) {
         rawTask = task;
+        this.priority = priority;
+        this.client = client;
+        this.deadline = deadline;
+        this.completion = completion;
         userExposed = new CompletableFuture<>();
     }
 
@@ -42,14 +77,69 @@ public class CompletableTask<T> implements Runnable {
      * Hands over the internal result to the user
      */
     public void notifyOwner() {
-        userExposed.complete(result);
+        T value = result;
+        complete(() -> userExposed.complete(value));
     }
 
     /**
      * Sends away an exception that occurred during execution.
      */
     public void notifyOwnerExceptional(Throwable t) {
-        userExposed.completeExceptionally(t);
+        complete(() -> userExposed.completeExceptionally(t));
+    }
+
+    private void complete(Runnable notification) {
+        if (completion == null) {
+            notification.run();
+            return;
+        }
+        try {
+            completion.execute(notification);
+        } catch (RejectedExecutionException rejected) {
+            // the executor was shut down, we still owe the user a result
+            notification.run();
+        }
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    public LimiterClient getClient() {
+        return client;
+    }
+
+    /** @return the unix timestamp in ms until which this task has to be started, {@link Long#MAX_VALUE} for none */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Raises the priority and extends the deadline, lower priorities and earlier deadlines are ignored.
+     * Only call this while the task is not in a queue, as it changes the order.
+     */
+    void escalate(Priority priority, long deadline) {
+        if (priority.getWeight() > this.priority.getWeight()) this.priority = priority;
+        this.deadline = Math.max(this.deadline, deadline);
+    }
+
+    /**
+     * Marks this task as running. Fails if the task was already dropped, e.g. because the
+     * user canceled the future or the deadline passed.
+     *
+     * @return true if the task may be executed
+     */
+    public boolean start() {
+        return state.compareAndSet(QUEUED, RUNNING);
+    }
+
+    /**
+     * Marks this task as dropped, if it did not start yet. A dropped task will never be executed.
+     *
+     * @return true if the task was waiting and is now dropped
+     */
+    public boolean drop() {
+        return state.compareAndSet(QUEUED, DROPPED);
     }
 
     /**
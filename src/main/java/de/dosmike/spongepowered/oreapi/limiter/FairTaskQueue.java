@@ -0,0 +1,189 @@
+package de.dosmike.spongepowered.oreapi.limiter;
+
+import java.util.*;
+
+/**
+ * Blocking task queue that schedules fairly between {@link LimiterClient}s and, within a client,
+ * weighted by {@link Priority}.
+ * <br>
+ * Clients are picked with deficit round robin: every time a client comes up, its deficit is
+ * increased by its share and it may dequeue that many tasks before the next client is up.
+ * <br>
+ * Within a client every priority has its own lane, ordered by earliest deadline first. Tasks without
+ * deadline or with equal deadline are kept in FIFO order. Lanes are picked with stride scheduling:
+ * every lane has a pass value that advances by the inverse of its weight each time a task is
+ * taken from it, and the non-empty lane with the lowest pass goes next. This gives each priority
+ * a share of dequeues proportional to its weight while all lanes are busy.
+ */
+class FairTaskQueue {
+
+    private static final long STRIDE_BASE = 1L << 20;
+    private static final Comparator<CompletableTask<?>> EARLIEST_DEADLINE = Comparator
+            .<CompletableTask<?>>comparingLong(CompletableTask::getDeadline)
+            .thenComparingLong(task -> task.sequence);
+    private static final long[] stride;
+    static {
+        Priority[] priorities = Priority.values();
+        stride = new long[priorities.length];
+        for (Priority priority : priorities)
+            stride[priority.ordinal()] = STRIDE_BASE / priority.getWeight();
+    }
+
+    /** The priority lanes of a single client */
+    private static class Lanes {
+        private final LimiterClient client;
+        private final Queue<CompletableTask<?>>[] lanes;
+        private final long[] pass;
+        private int size = 0;
+        private int deficit = 0;
+
+        @SuppressWarnings("unchecked")
+        private Lanes(LimiterClient client) {
+            this.client = client;
+            lanes = (Queue<CompletableTask<?>>[]) new Queue<?>[stride.length];
+            pass = new long[stride.length];
+            for (int i = 0; i < lanes.length; i++)
+                lanes[i] = new PriorityQueue<>(EARLIEST_DEADLINE);
+        }
+
+        private void add(CompletableTask<?> task) {
+            int lane = task.getPriority().ordinal();
+            if (lanes[lane].isEmpty()) {
+                // an idle lane must not bank credit while it had nothing to do
+                pass[lane] = Math.max(pass[lane], minimumPass());
+            }
+            lanes[lane].add(task);
+            size++;
+        }
+
+        private boolean remove(CompletableTask<?> task) {
+            if (!lanes[task.getPriority().ordinal()].remove(task)) return false;
+            size--;
+            return true;
+        }
+
+        private CompletableTask<?> poll() {
+            int next = -1;
+            for (int i = 0; i < lanes.length; i++) {
+                if (!lanes[i].isEmpty() && (next < 0 || pass[i] < pass[next]))
+                    next = i;
+            }
+            pass[next] += stride[next];
+            size--;
+            return lanes[next].poll();
+        }
+
+        /** the lowest pass of all busy lanes, or the highest pass if all lanes are idle */
+        private long minimumPass() {
+            long min = Long.MAX_VALUE, max = 0L;
+            for (int i = 0; i < lanes.length; i++) {
+                if (!lanes[i].isEmpty()) min = Math.min(min, pass[i]);
+                max = Math.max(max, pass[i]);
+            }
+            return min == Long.MAX_VALUE ? max : min;
+        }
+    }
+
+    /** lanes of all clients that currently have tasks waiting, in round robin order */
+    private final Deque<Lanes> round = new ArrayDeque<>();
+    private final Map<LimiterClient, Lanes> active = new IdentityHashMap<>();
+    private final Object mutex = new Object();
+    private int size = 0;
+    private long sequence = 0L;
+
+    void add(CompletableTask<?> task) {
+        synchronized (mutex) {
+            Lanes lanes = active.get(task.getClient());
+            if (lanes == null) {
+                lanes = new Lanes(task.getClient());
+                active.put(task.getClient(), lanes);
+                round.addLast(lanes);
+            }
+            task.sequence = sequence++;
+            lanes.add(task);
+            size++;
+            mutex.notify();
+        }
+    }
+
+    /** blocks until a task is available, without removing it */
+    void awaitTask() throws InterruptedException {
+        synchronized (mutex) {
+            while (size == 0)
+                mutex.wait();
+        }
+    }
+
+    /** removes the next task from the queue, or returns null if the queue is empty */
+    CompletableTask<?> poll() {
+        synchronized (mutex) {
+            if (size == 0) return null;
+            Lanes head;
+            while ((head = round.peekFirst()).deficit < 1) {
+                // this clients turn is over, it gets a new quantum for the next round
+                round.addLast(round.pollFirst());
+                head.deficit += head.client.getShare();
+            }
+            CompletableTask<?> task = head.poll();
+            head.deficit--;
+            if (head.size == 0) {
+                // clients without tasks leave the round and don't keep their deficit
+                round.pollFirst();
+                active.remove(head.client);
+            }
+            size--;
+            return task;
+        }
+    }
+
+    /** removes a task that is no longer needed, e.g. because it was canceled */
+    boolean remove(CompletableTask<?> task) {
+        synchronized (mutex) {
+            Lanes lanes = active.get(task.getClient());
+            if (lanes == null || !lanes.remove(task)) return false;
+            if (lanes.size == 0) {
+                round.remove(lanes);
+                active.remove(task.getClient());
+            }
+            size--;
+            return true;
+        }
+    }
+
+    /**
+     * Raises the priority and extends the deadline of a task. If the task is still waiting, it is
+     * moved to its new place in the queue.
+     *
+     * @return true if the task was still waiting
+     */
+    boolean escalate(CompletableTask<?> task, Priority priority, long deadline) {
+        synchronized (mutex) {
+            Lanes lanes = active.get(task.getClient());
+            boolean queued = lanes != null && lanes.remove(task);
+            task.escalate(priority, deadline);
+            // the lanes stay active, so this is only a move within the client
+            if (queued) lanes.add(task);
+            return queued;
+        }
+    }
+
+    boolean isEmpty() {
+        synchronized (mutex) {
+            return size == 0;
+        }
+    }
+
+    /** removes all queued tasks, putting them into the target collection */
+    void drainTo(Collection<CompletableTask<?>> target) {
+        synchronized (mutex) {
+            for (Lanes lanes : round) {
+                for (Queue<CompletableTask<?>> lane : lanes.lanes)
+                    target.addAll(lane);
+            }
+            round.clear();
+            active.clear();
+            size = 0;
+        }
+    }
+
+}
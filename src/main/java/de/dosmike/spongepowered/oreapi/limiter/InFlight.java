@@ -0,0 +1,124 @@
+package de.dosmike.spongepowered.oreapi.limiter;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical requests of a {@link LimiterClient}: if a request with the same key is already
+ * waiting or running, later callers attach to it instead of enqueueing another task.
+ * <br>
+ * Every caller gets a separate future, so canceling one does not affect the others. Once all callers
+ * canceled, the shared task is canceled as well, removing it from the queue if it did not start yet.
+ * Callers that join a waiting task raise its priority and extend its deadline to their own, so nobody
+ * waits at a lower priority or times out earlier than they asked for.
+ */
+class InFlight {
+
+    /** a task shared by all callers that asked for the same thing while it was in flight */
+    private static class Flight<T> {
+        final CompletableFuture<T> shared = new CompletableFuture<>();
+        /** callers that did not cancel yet, only modified within the flights map */
+        int waiters = 0;
+        /** the highest priority and latest deadline of all callers, only modified within the flights map */
+        volatile Priority priority;
+        volatile long deadline;
+        volatile CompletableTask<T> task = null;
+        volatile boolean abandoned = false;
+
+        Flight(Priority priority, long deadline) {
+            this.priority = priority;
+            this.deadline = deadline;
+        }
+    }
+
+    private static class Key {
+        final LimiterClient client;
+        final String request;
+
+        Key(LimiterClient client, String request) {
+            this.client = client;
+            this.request = request;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return client == key.client && request.equals(key.request);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(client) + request.hashCode();
+        }
+    }
+
+    private final RateLimiter limiter;
+    private final Map<Key, Flight<?>> flights = new ConcurrentHashMap<>();
+
+    InFlight(RateLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    /**
+     * @param requestKey identifies endpoint and arguments of the request
+     * @param start      enqueues the task if none is in flight for the key
+     */
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<T> join(String requestKey, Priority priority, LimiterClient client, long deadline,
+                                  Supplier<CompletableTask<T>> start) {
+        Key flightKey = new Key(client, requestKey);
+        Flight<T> created = new Flight<>(priority, deadline);
+        Flight<T> flight = (Flight<T>) flights.compute(flightKey, (key, existing) -> {
+            if (existing == null) {
+                created.waiters++;
+                return created;
+            }
+            existing.waiters++;
+            if (priority.getWeight() > existing.priority.getWeight()) existing.priority = priority;
+            existing.deadline = Math.max(existing.deadline, deadline);
+            return existing;
+        });
+        if (flight == created) {
+            try {
+                CompletableTask<T> task = start.get();
+                flight.task = task;
+                //callers that joined before the task was set
+                limiter.escalate(task, flight.priority, flight.deadline);
+                task.getFuture().whenComplete((result, exception) -> {
+                    flights.remove(flightKey, flight);
+                    if (exception != null) flight.shared.completeExceptionally(exception);
+                    else flight.shared.complete(result);
+                });
+                //all callers might have canceled before the task was enqueued
+                if (flight.abandoned) task.getFuture().cancel(true);
+            } catch (Throwable t) {
+                flights.remove(flightKey, flight);
+                flight.shared.completeExceptionally(t);
+            }
+        } else {
+            CompletableTask<T> task = flight.task;
+            if (task != null) limiter.escalate(task, flight.priority, flight.deadline);
+        }
+        CompletableFuture<T> dependent = flight.shared.thenApply(Function.identity());
+        dependent.whenComplete((result, exception) -> {
+            if (dependent.isCancelled()) abandon(flightKey, flight);
+        });
+        return dependent;
+    }
+
+    private void abandon(Key flightKey, Flight<?> flight) {
+        flights.computeIfPresent(flightKey, (key, existing) -> {
+            if (existing != flight || --existing.waiters > 0) return existing;
+            existing.abandoned = true;
+            return null;
+        });
+        CompletableTask<?> started = flight.task;
+        if (flight.abandoned && started != null) started.getFuture().cancel(true);
+    }
+
+}
@@ -1,7 +1,8 @@
 package de.dosmike.spongepowered.oreapi.limiter;
 
 /**
- * Interface for request limiters
+ * Interface for request limiters.
+ * Limiters are shared between all tasks in flight, so implementations have to be thread safe.
  */
 public interface Limiter {
 
@@ -11,15 +12,37 @@ public interface Limiter {
     /** @return the unix timestamp, where the next request can be made */
     long nextRequestAt();
 
-    /** blocks until a request can be made */
+    /** blocks until a request can be made.
+     * Sleeps exactly until {@link #nextRequestAt()}, re-checking in case the window moved in the meantime */
     default void waitForNext() throws InterruptedException {
-        long nextAt = nextRequestAt();
-        while (nextAt-System.currentTimeMillis() > 0) {
-            Thread.sleep(nextAt-System.currentTimeMillis());
+        long delay;
+        while ((delay = nextRequestAt()-System.currentTimeMillis()) > 0) {
+            Thread.sleep(delay);
         }
     }
 
     /** notifies the limiter that a request is going out basically now */
     void takeRequest();
 
+    /**
+     * Called with the rate limit relevant information of every response.
+     * Limiters with fixed rates can ignore this, adaptive limiters can use it to back off or speed up.
+     */
+    default void onFeedback(ServerFeedback feedback) {}
+
+    /**
+     * Atomically checks if a request can be made and takes it if so.
+     * The default implementation locks on the limiter, so implementations that are not
+     * lock free have to synchronize their other methods on the instance as well.
+     *
+     * @return true if a request was taken
+     */
+    default boolean tryTakeRequest() {
+        synchronized (this) {
+            if (!canRequest()) return false;
+            takeRequest();
+            return true;
+        }
+    }
+
 }
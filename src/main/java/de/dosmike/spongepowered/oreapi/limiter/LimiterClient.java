@@ -0,0 +1,30 @@
+package de.dosmike.spongepowered.oreapi.limiter;
+
+/**
+ * Identifies who enqueued a task in a {@link RateLimiter}, so the limiter can
+ * schedule fairly between multiple users sharing it. Every client gets a number
+ * of dequeues per round proportional to its share, so a client filling up the
+ * queue can no longer starve the others.
+ * Clients are compared by identity.
+ */
+public class LimiterClient {
+
+    /** Used for tasks that were enqueued without specifying a client */
+    public static final LimiterClient ANONYMOUS = new LimiterClient(1);
+
+    private final int share;
+
+    /**
+     * @param share the relative amount of tasks this client gets per round, at least 1
+     */
+    public LimiterClient(int share) {
+        if (share < 1) throw new IllegalArgumentException("Share has to be at least 1");
+        this.share = share;
+    }
+
+    /** @return the relative amount of tasks this client gets per round while other clients are waiting */
+    public int getShare() {
+        return share;
+    }
+
+}
@@ -0,0 +1,29 @@
+package de.dosmike.spongepowered.oreapi.limiter;
+
+/**
+ * Priority classes for tasks in the {@link RateLimiter}.
+ * Tasks are dequeued weighted-fair, meaning higher priorities get picked more often,
+ * but lower priorities never starve completely and use up whatever budget is left.
+ */
+public enum Priority {
+
+    /** For requests a user is actively waiting for */
+    Interactive(16),
+    /** The default priority */
+    Normal(4),
+    /** For bulk requests like synchronizing or crawling through search results */
+    Background(1),
+    ;
+
+    private final int weight;
+
+    Priority(int weight) {
+        this.weight = weight;
+    }
+
+    /** @return the relative share of dequeues this priority gets, if all priorities have tasks waiting */
+    public int getWeight() {
+        return weight;
+    }
+
+}
@@ -5,6 +5,7 @@ import de.dosmike.spongepowered.oreapi.utility.TracingThreadFactory;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 import java.util.logging.Logger;
 
@@ -12,21 +13,46 @@ import java.util.logging.Logger;
  * If you're concerned about dosing the ore service, take this.
  * This is a management thread for the tasks, that'll wait for a limiter
  * to approve the next task to be executed in a async executor.
+ * Up to {@link #getConcurrency()} tasks can be in flight at the same time,
+ * as long as the limiter has budget left. Waiting tasks are picked fair between
+ * {@link LimiterClient}s and weighted-fair by their {@link Priority}.
  * Since this is about preventing
+ * <br>
+ * The management thread blocks on the task queue while idle, so enqueueing a
+ * task wakes it up immediately. Waits for the limiter are timed to
+ * {@link Limiter#nextRequestAt()} instead of polling.
+ * <br>
+ * Tasks that are canceled by the user, or whose deadline passes while waiting,
+ * are removed from the queue and never take a request from the limiter.
+ * The next task is only picked once a slot and the limiter are free, so it's always
+ * the best task at the time it can actually start.
  */
 public class RateLimiter extends Thread {
 
-    private boolean running = true;
-    private final List<CompletableTask<?>> tasks = new LinkedList<>();
-    private final Object taskMutex = new Object();
+    /** the amount of tasks allowed to run at the same time, if not otherwise specified */
+    public static final int DEFAULT_CONCURRENCY = 2;
+
+    private volatile boolean running = true;
+    private final FairTaskQueue tasks = new FairTaskQueue();
     private final List<Runnable> onIdleCallbacks = new LinkedList<>();
     private final List<Runnable> onIdleOnceCallbacks = new LinkedList<>();
     private final Object idleMutex = new Object();
     private final Limiter limit;
-    private final ExecutorService exec = Executors.newFixedThreadPool(1, new TracingThreadFactory());
+    private final ExecutorService exec = Executors.newCachedThreadPool(new TracingThreadFactory());
+    private final ScheduledThreadPoolExecutor deadlines = new ScheduledThreadPoolExecutor(1, new TracingThreadFactory());
+    /** tasks that were enqueued and did not yet complete */
+    private final AtomicInteger pending = new AtomicInteger();
+    /** tasks that can be joined by identical requests, see {@link #enqueueShared} */
+    private final InFlight shared = new InFlight(this);
+    private final Object slotMutex = new Object();
+    private int concurrency;
+    private int inFlight = 0;
 
-    public RateLimiter(Limiter limiter) {
+    public RateLimiter(Limiter limiter, int concurrency) {
+        if (concurrency < 1) throw new IllegalArgumentException("Concurrency has to be at least 1");
         this.limit = limiter;
+        this.concurrency = concurrency;
+        deadlines.setRemoveOnCancelPolicy(true);
         try {
             setName("Ore Query Limiter");
             setUncaughtExceptionHandler(TracingThreadFactory.exceptionTracePrinter);
@@ -34,86 +60,253 @@ public class RateLimiter extends Thread {
         }
     }
 
+    public RateLimiter(Limiter limiter) {
+        this(limiter, DEFAULT_CONCURRENCY);
+    }
+
     public RateLimiter() {
-        this(new BucketLimiter(2, 80)); //bucket is faster than averaging
+        this(new CellRateLimiter(2, 80)); //no bursts at window edges, and lock free
     }
 
     @Override
     public void run() {
-        boolean nowIdle;
         while(running) {
-            CompletableTask<?> task = null;
-            //retrieve next task
-            synchronized (taskMutex) {
-                if (!tasks.isEmpty())
-                    task = tasks.remove(0);
-            }
-            //execute next task outside of mutex
-            if (task != null) {
-                Future<?> currentTask = null;
-                try {
-                    currentTask = exec.submit(task);
-                    currentTask.get();
-                    // success
-                    task.notifyOwner();
-                } catch (InterruptedException i) {
-                    // termination
-                    currentTask.cancel(true);
-                    task.cancel();
-                    halt(); break;
-                } catch (ExecutionException wrapped) {
-                    // failure
-                    task.notifyOwnerExceptional(wrapped.getCause());
-                }
-                //on idle callback
-                synchronized (taskMutex) {
-                    nowIdle = tasks.isEmpty();
-                }
-                //again do actual work outside of mutex
-                if (nowIdle) {
-                    onIdleNotify();
-                }
-            } else nowIdle = true;
-            // after a task (!canRequest) definitively wait for the next to be requestable
+            CompletableTask<?> task;
             try {
-                if (!limit.canRequest()) {
-                    limit.waitForNext();
-                } else if (nowIdle) { //if we did no yield otherwise, let it do so here
-                    Thread.sleep(100);
-                }
+                //block until a task is available, enqueue will wake us up
+                tasks.awaitTask();
+                //wait for a free slot, then for the limiter to approve the next request.
+                //the task is picked only after that, so tasks enqueued in the meantime can still go first
+                acquireSlot();
+                limit.waitForNext();
             } catch (InterruptedException interrupt) {
                 //termination
                 halt();
                 break;
             }
+            task = tasks.poll();
+            //all tasks might have been canceled while we were waiting, or the deadline passed just now
+            if (task == null || expire(task) || !task.start()) {
+                releaseSlot();
+                continue;
+            }
+            try {
+                exec.execute(()->execute(task));
+            } catch (RejectedExecutionException rejected) {
+                // executor was shut down by halt() in the meantime
+                task.cancel();
+                break;
+            }
         }
         Logger.getLogger(getName()).fine("Rate Limiter terminated");
     }
 
+    /** runs on the executor, multiple of these can be in flight at the same time */
+    private void execute(CompletableTask<?> task) {
+        try {
+            task.run();
+            // success
+            task.notifyOwner();
+        } catch (Throwable t) {
+            if (running) {
+                // failure
+                task.notifyOwnerExceptional(t);
+            } else {
+                // termination
+                task.cancel();
+            }
+        } finally {
+            releaseSlot();
+        }
+        finished();
+    }
+
+    /** @return true if the deadline for the task passed and it was failed */
+    private boolean expire(CompletableTask<?> task) {
+        if (System.currentTimeMillis() <= task.getDeadline() || !task.drop()) return false;
+        task.notifyOwnerExceptional(new TimeoutException("The deadline passed before the task could start"));
+        finished();
+        return true;
+    }
+
+    /** called after a task was dropped, to clean up after it */
+    private void dropped(CompletableTask<?> task) {
+        tasks.remove(task);
+        finished();
+    }
+
+    private void finished() {
+        //on idle callback
+        if (pending.decrementAndGet() == 0 && running) {
+            onIdleNotify();
+        }
+    }
+
+    private void acquireSlot() throws InterruptedException {
+        synchronized (slotMutex) {
+            while (inFlight >= concurrency)
+                slotMutex.wait();
+            inFlight++;
+        }
+    }
+
+    private void releaseSlot() {
+        synchronized (slotMutex) {
+            inFlight--;
+            slotMutex.notifyAll();
+        }
+    }
+
     /**
-     * Enqueues a task as CompletableTask that awaits execution.
+     * Change the amount of tasks that may be running at the same time.
+     * Tasks still have to take a request from the {@link Limiter} for every request they make,
+     * so this does not allow for more requests than the limiter permits, it only allows
+     * multiple slow requests to be in flight at the same time.
+     *
+     * @param concurrency the new maximum amount of tasks in flight, at least 1
+     */
+    public void setConcurrency(int concurrency) {
+        if (concurrency < 1) throw new IllegalArgumentException("Concurrency has to be at least 1");
+        synchronized (slotMutex) {
+            this.concurrency = concurrency;
+            slotMutex.notifyAll();
+        }
+    }
+
+    public int getConcurrency() {
+        synchronized (slotMutex) {
+            return concurrency;
+        }
+    }
+
+    /**
+     * Enqueues a task as CompletableTask that awaits execution with {@link Priority#Normal}.
      * Returns the CompletableFuture that will receive results.
      */
     public <T> CompletableFuture<T> enqueue(Supplier<T> task) {
+        return enqueue(task, Priority.Normal);
+    }
+
+    /**
+     * Enqueues a task as CompletableTask that awaits execution.
+     * Tasks with higher priority are picked more often, see {@link Priority}.
+     * Returns the CompletableFuture that will receive results.
+     */
+    public <T> CompletableFuture<T> enqueue(Supplier<T> task, Priority priority) {
+        return enqueue(task, priority, LimiterClient.ANONYMOUS);
+    }
+
+    /**
+     * Enqueues a task as CompletableTask that awaits execution.
+     * The limiter takes turns between clients, according to their share, so a client can not
+     * starve other clients by filling up the queue. Within the tasks of a client, tasks with
+     * higher priority are picked more often, see {@link Priority}.
+     * Returns the CompletableFuture that will receive results.
+     */
+    public <T> CompletableFuture<T> enqueue(Supplier<T> task, Priority priority, LimiterClient client) {
+        return enqueue(task, priority, client, Long.MAX_VALUE);
+    }
+
+    /**
+     * Enqueues a task as CompletableTask that awaits execution, like {@link #enqueue(Supplier, Priority, LimiterClient)}.
+     * If the task could not start until the deadline, it is removed from the queue and the returned future
+     * completes exceptionally with a {@link TimeoutException}. Tasks of the same client and priority are
+     * picked earliest deadline first.
+     * Canceling the returned future removes the task from the queue as well, if it did not start yet.
+     *
+     * @param deadline unix timestamp in ms, {@link Long#MAX_VALUE} for no deadline
+     */
+    public <T> CompletableFuture<T> enqueue(Supplier<T> task, Priority priority, LimiterClient client, long deadline) {
+        return enqueue(task, priority, client, deadline, null);
+    }
+
+    /**
+     * Enqueues a task as CompletableTask that awaits execution, like {@link #enqueue(Supplier, Priority, LimiterClient, long)}.
+     * The returned future is completed through the completion executor, so stages the caller attaches
+     * don't run on the limiters threads. Slow callbacks would otherwise hold up the following tasks.
+     *
+     * @param deadline   unix timestamp in ms, {@link Long#MAX_VALUE} for no deadline
+     * @param completion executor to complete the returned future with, null to complete on the thread that ran the task
+     */
+    public <T> CompletableFuture<T> enqueue(Supplier<T> task, Priority priority, LimiterClient client, long deadline, Executor completion) {
+        return submit(task, priority, client, deadline, completion).getFuture();
+    }
+
+    /**
+     * Enqueues a task like {@link #enqueue(Supplier, Priority, LimiterClient, long, Executor)}, unless the client
+     * already has a task with the same key waiting or running. In that case the returned future attaches to that
+     * task instead, and the task is picked with the higher priority and the later deadline of both.
+     * Every caller gets a separate future, canceling it only cancels the task once all callers canceled.
+     * Use this for requests that don't change anything, so identical requests only take one request from the limiter.
+     *
+     * @param requestKey identifies endpoint and arguments of the request
+     * @param deadline   unix timestamp in ms, {@link Long#MAX_VALUE} for no deadline
+     * @param completion executor to complete the returned future with, null to complete on the thread that ran the task
+     */
+    public <T> CompletableFuture<T> enqueueShared(String requestKey, Supplier<T> task, Priority priority, LimiterClient client, long deadline, Executor completion) {
+        return shared.join(requestKey, priority, client, deadline, () -> submit(task, priority, client, deadline, completion));
+    }
+
+    private <T> CompletableTask<T> submit(Supplier<T> task, Priority priority, LimiterClient client, long deadline, Executor completion) {
         if (!isAlive()) throw new IllegalStateException("The rate limiter has already terminated");
-        CompletableTask<T> future = new CompletableTask<>(task);
-        synchronized (taskMutex) {
-            tasks.add(future);
+        CompletableTask<T> future = new CompletableTask<>(task, priority, client, deadline, completion);
+        pending.incrementAndGet();
+        tasks.add(future);
+        if (deadline != Long.MAX_VALUE) future.timeout = scheduleDeadline(future);
+        future.getFuture().whenComplete((result, error) -> {
+            cancelDeadline(future);
+            //user canceled the future before the task was started
+            if (future.drop()) dropped(future);
+        });
+        return future;
+    }
+
+    /** raises the priority and extends the deadline of a task, when another caller joins it */
+    void escalate(CompletableTask<?> task, Priority priority, long deadline) {
+        synchronized (task) {
+            long before = task.getDeadline();
+            if (!tasks.escalate(task, priority, deadline) || task.getDeadline() == before) return;
+            cancelDeadline(task);
+            if (task.getDeadline() != Long.MAX_VALUE) task.timeout = scheduleDeadline(task);
+            //completed in the meantime, so nobody cancels the new timer
+            if (task.getFuture().isDone()) cancelDeadline(task);
+        }
+    }
+
+    private void cancelDeadline(CompletableTask<?> task) {
+        ScheduledFuture<?> timeout = task.timeout;
+        if (timeout != null) timeout.cancel(false);
+    }
+
+    private ScheduledFuture<?> scheduleDeadline(CompletableTask<?> task) {
+        try {
+            return deadlines.schedule(() -> {
+                //the deadline might have been extended since this was scheduled
+                if (System.currentTimeMillis() < task.getDeadline()) return;
+                if (task.drop()) {
+                    task.notifyOwnerExceptional(new TimeoutException("The deadline passed before the task could start"));
+                    dropped(task);
+                }
+            }, Math.max(0L, task.getDeadline() - System.currentTimeMillis() + 1L), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException rejected) {
+            // halted in the meantime, the task will be canceled by halt()
+            return null;
         }
-        return future.getFuture();
     }
 
     /**
-     * Shut down this RateLimiter after the current task finished.
+     * Shut down this RateLimiter, interrupting all tasks currently in flight.
      * All enqueues tasks will be canceled as well.
      */
     public void halt() {
         running = false;
-        synchronized (taskMutex) {
-            tasks.forEach(CompletableTask::cancel);
-            tasks.clear();
-        }
+        List<CompletableTask<?>> canceled = new LinkedList<>();
+        tasks.drainTo(canceled);
+        canceled.forEach(CompletableTask::cancel);
         exec.shutdownNow(); //notify running task
+        deadlines.shutdownNow();
+        if (Thread.currentThread() != this)
+            interrupt(); //wake up the dispatcher if it's waiting for tasks
     }
 
     /**
@@ -157,10 +350,20 @@ public class RateLimiter extends Thread {
     }
 
     /**
-     * Proxy to this limiters {@link Limiter#takeRequest()}
+     * Proxy to this limiters {@link Limiter#onFeedback(ServerFeedback)}
      */
-    public synchronized void takeRequest() {
-        limit.takeRequest();
+    public void feedback(ServerFeedback feedback) {
+        limit.onFeedback(feedback);
+    }
+
+    /**
+     * Proxy to this limiters {@link Limiter#takeRequest()}.
+     * As multiple tasks might be in flight, this blocks until the limiter has budget for another request.
+     */
+    public void takeRequest() throws InterruptedException {
+        while (!limit.tryTakeRequest()) {
+            Thread.sleep(Math.max(1L, limit.nextRequestAt() - System.currentTimeMillis()));
+        }
     }
 
 }
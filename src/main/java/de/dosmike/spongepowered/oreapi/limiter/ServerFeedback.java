@@ -0,0 +1,109 @@
+package de.dosmike.spongepowered.oreapi.limiter;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rate limit relevant information from a server response.
+ * This reads the status code, Retry-After and the common X-RateLimit-* / RateLimit-* headers.
+ */
+public class ServerFeedback {
+
+    /** HTTP 429 Too Many Requests */
+    public static final int TOO_MANY_REQUESTS = 429;
+
+    private final boolean throttled;
+    private final long retryAt;
+    private final int remaining;
+    private final long resetAt;
+
+    /**
+     * @param throttled true if the server rejected the request for exceeding a rate limit
+     * @param retryAt   unix timestamp in ms before which no further requests should be made, 0 if unknown
+     * @param remaining requests the server reported as remaining in the current window, -1 if unknown
+     * @param resetAt   unix timestamp in ms when the servers window resets, 0 if unknown
+     */
+    public ServerFeedback(boolean throttled, long retryAt, int remaining, long resetAt) {
+        this.throttled = throttled;
+        this.retryAt = retryAt;
+        this.remaining = remaining;
+        this.resetAt = resetAt;
+    }
+
+    /**
+     * Parses the feedback from a response. Header names are matched case insensitive.
+     *
+     * @param responseCode the http status code
+     * @param headers      the response headers as returned by URLConnection#getHeaderFields
+     */
+    public static ServerFeedback fromResponse(int responseCode, Map<String, List<String>> headers) {
+        long now = System.currentTimeMillis();
+        String retryAfter = header(headers, "Retry-After");
+        String remaining = header(headers, "X-RateLimit-Remaining", "RateLimit-Remaining");
+        String reset = header(headers, "X-RateLimit-Reset", "RateLimit-Reset");
+        return new ServerFeedback(
+                responseCode == TOO_MANY_REQUESTS,
+                retryAfter != null ? parseRetryAfter(retryAfter, now) : 0L,
+                remaining != null ? parseInt(remaining) : -1,
+                reset != null ? parseReset(reset, now) : 0L);
+    }
+
+    private static String header(Map<String, List<String>> headers, String... names) {
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            if (entry.getKey() == null || entry.getValue() == null || entry.getValue().isEmpty()) continue;
+            for (String name : names)
+                if (name.equalsIgnoreCase(entry.getKey()))
+                    return entry.getValue().get(0).trim();
+        }
+        return null;
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** Retry-After is either delta seconds or a http date */
+    private static long parseRetryAfter(String value, long now) {
+        try {
+            return now + Long.parseLong(value) * 1000L;
+        } catch (NumberFormatException ignore) {}
+        try {
+            return ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (Exception e) {
+            return 0L;
+        }
+    }
+
+    /** Reset headers are either delta seconds or unix seconds, depending on the server */
+    private static long parseReset(String value, long now) {
+        try {
+            long seconds = (long) Double.parseDouble(value);
+            return seconds > 1_000_000_000L ? seconds * 1000L : now + seconds * 1000L;
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    public boolean isThrottled() {
+        return throttled;
+    }
+
+    public long getRetryAt() {
+        return retryAt;
+    }
+
+    public int getRemaining() {
+        return remaining;
+    }
+
+    public long getResetAt() {
+        return resetAt;
+    }
+
+}
@@ -1,9 +1,11 @@
 package de.dosmike.spongepowered.oreapi.netobject;
 
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 import de.dosmike.spongepowered.oreapi.utility.FromJson;
 import de.dosmike.spongepowered.oreapi.utility.JsonUtil;
 
+import java.io.IOException;
 import java.io.Serializable;
 
 public class OreFileInfo implements Serializable {
@@ -19,6 +21,10 @@ public class OreFileInfo implements Serializable {
         JsonUtil.fillSelf(this, object);
     }
 
+    public OreFileInfo(JsonReader reader) throws IOException {
+        OreFileInfoJsonDecoder.fill(this, reader);
+    }
+
     public String getName() {
         return name;
     }
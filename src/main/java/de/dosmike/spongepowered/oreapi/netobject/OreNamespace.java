@@ -1,24 +1,43 @@
 package de.dosmike.spongepowered.oreapi.netobject;
 
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 import de.dosmike.spongepowered.oreapi.utility.FromJson;
+import de.dosmike.spongepowered.oreapi.utility.Interner;
 import de.dosmike.spongepowered.oreapi.utility.JsonUtil;
+import de.dosmike.spongepowered.oreapi.utility.TypeMappers;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 
+/**
+ * Namespaces are immutable and shared between projects and references, see {@link Flyweights}.
+ */
 public class OreNamespace implements Serializable {
 
-    @FromJson("owner")
+    @FromJson(value = "owner", mapper = TypeMappers.InterningStringMapper.class)
     String owner;
     @FromJson("slug")
     String slug;
 
+    /** maps decoded namespaces to the shared instance */
+    public static class Flyweights extends TypeMappers.FlyweightMapper<OreNamespace> {
+        private static final Interner<OreNamespace> namespaces = new Interner<>(8192);
+        public Flyweights() {
+            super(OreNamespace.class, namespaces);
+        }
+    }
+
     public OreNamespace(JsonObject object) {
         JsonUtil.fillSelf(this, object);
     }
 
+    public OreNamespace(JsonReader reader) throws IOException {
+        OreNamespaceJsonDecoder.fill(this, reader);
+    }
+
     public OreNamespace(String projectOwner, String projectSlug) {
         owner = projectOwner != null ? projectOwner : "";
         slug = projectSlug != null ? projectSlug : "";
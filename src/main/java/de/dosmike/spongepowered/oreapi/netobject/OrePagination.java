@@ -1,9 +1,11 @@
 package de.dosmike.spongepowered.oreapi.netobject;
 
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 import de.dosmike.spongepowered.oreapi.utility.FromJson;
 import de.dosmike.spongepowered.oreapi.utility.JsonUtil;
 
+import java.io.IOException;
 import java.io.Serializable;
 
 public class OrePagination<F extends OrePaginationFilter> implements Serializable {
@@ -26,6 +28,11 @@ public class OrePagination<F extends OrePaginationFilter> implements Serializabl
         JsonUtil.fillSelf(this, object);
     }
 
+    public OrePagination(JsonReader reader, F filterBase) throws IOException {
+        this.filter = filterBase;
+        OrePaginationJsonDecoder.fill(this, reader);
+    }
+
     /**
      * create a new pagination filter for the requested page.
      * The upper limit can't be exceeded but won't throw an exception.
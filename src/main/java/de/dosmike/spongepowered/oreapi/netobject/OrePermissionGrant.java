@@ -1,8 +1,10 @@
 package de.dosmike.spongepowered.oreapi.netobject;
 
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -23,6 +25,21 @@ public class OrePermissionGrant extends HashSet<OrePermission> {
         addAll(perms);
     }
 
+    public OrePermissionGrant(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("permissions")) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext())
+                add(OrePermission.fromString(reader.nextString()));
+            reader.endArray();
+        }
+        reader.endObject();
+    }
+
     public void ifContainsAll(Runnable r, OrePermission... required) {
         if (containsAll(Arrays.asList(required))) r.run();
     }
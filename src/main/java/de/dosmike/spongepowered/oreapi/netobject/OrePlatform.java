@@ -1,31 +1,50 @@
 package de.dosmike.spongepowered.oreapi.netobject;
 
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 import de.dosmike.spongepowered.oreapi.utility.FromJson;
+import de.dosmike.spongepowered.oreapi.utility.Interner;
 import de.dosmike.spongepowered.oreapi.utility.JsonUtil;
+import de.dosmike.spongepowered.oreapi.utility.TypeMappers;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.Objects;
 
 /**
  * parses both SimplePlatform and VersionPlatform.
  * Keep in mind, that SimplePlatform will not provide a display platform version or minecraft version.
  * platform version is optional.
+ * <br>
+ * Platforms are immutable and shared between versions, see {@link Flyweights}.
  */
 public class OrePlatform implements Serializable {
 
-    @FromJson("platform")
+    @FromJson(value = "platform", mapper = TypeMappers.InterningStringMapper.class)
     String platform;
-    @FromJson(value = "platform_version", optional = true)
+    @FromJson(value = "platform_version", optional = true, mapper = TypeMappers.InterningStringMapper.class)
     String platformVersion;
-    @FromJson(value = "display_platform_version", optional = true)
+    @FromJson(value = "display_platform_version", optional = true, mapper = TypeMappers.InterningStringMapper.class)
     String displayPlatformVersion;
-    @FromJson(value = "minecraft_version", optional = true)
+    @FromJson(value = "minecraft_version", optional = true, mapper = TypeMappers.InterningStringMapper.class)
     String minecraftVersion;
 
+    /** maps decoded platforms to the shared instance, most versions target the same few platforms */
+    public static class Flyweights extends TypeMappers.FlyweightMapper<OrePlatform> {
+        private static final Interner<OrePlatform> platforms = new Interner<>(1024);
+        public Flyweights() {
+            super(OrePlatform.class, platforms);
+        }
+    }
+
     public OrePlatform(JsonObject object) {
         JsonUtil.fillSelf(this, object);
     }
 
+    public OrePlatform(JsonReader reader) throws IOException {
+        OrePlatformJsonDecoder.fill(this, reader);
+    }
+
     public String getName() {
         return platform;
     }
@@ -48,4 +67,22 @@ public class OrePlatform implements Serializable {
         if (minecraftVersion != null) val += ", " + minecraftVersion;
         return val + ")";
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        OrePlatform that = (OrePlatform) o;
+
+        return Objects.equals(platform, that.platform) &&
+                Objects.equals(platformVersion, that.platformVersion) &&
+                Objects.equals(displayPlatformVersion, that.displayPlatformVersion) &&
+                Objects.equals(minecraftVersion, that.minecraftVersion);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(platform, platformVersion, displayPlatformVersion, minecraftVersion);
+    }
 }
@@ -1,12 +1,23 @@
 package de.dosmike.spongepowered.oreapi.netobject;
 
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import de.dosmike.spongepowered.oreapi.utility.FromJson;
 import de.dosmike.spongepowered.oreapi.utility.JsonUtil;
+import de.dosmike.spongepowered.oreapi.utility.Lazy;
 import de.dosmike.spongepowered.oreapi.utility.TypeMappers;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * Promoted versions, stats and settings are kept as json until they are accessed, most
+ * users of search results only look at the name and namespace of the projects.
+ */
 public class OreProject extends OreProjectReference implements Serializable {
 
     @FromJson(value = "created_at", mapper = TypeMappers.StringTimestampMapper.class)
@@ -14,9 +25,9 @@ public class OreProject extends OreProjectReference implements Serializable {
     @FromJson("name")
     String name;
     @FromJson("promoted_versions")
-    OrePromotedVersion[] promotedVersions;
+    Lazy<OrePromotedVersion[]> promotedVersions;
     @FromJson("stats")
-    OreProjectStatsAll stats;
+    Lazy<OreProjectStatsAll> stats;
     @FromJson("category")
     OreCategory category;
     @FromJson(value = "summary", optional = true)
@@ -26,7 +37,7 @@ public class OreProject extends OreProjectReference implements Serializable {
     @FromJson("visibility")
     OreVisibility visibility;
     @FromJson("settings")
-    OreProjectSettings settings;
+    Lazy<OreProjectSettings> settings;
     @FromJson("icon_url")
     String urlIcon;
 
@@ -34,6 +45,16 @@ public class OreProject extends OreProjectReference implements Serializable {
         JsonUtil.fillSelf(this, object);
     }
 
+    public OreProject(JsonReader reader) throws IOException {
+        OreProjectJsonDecoder.fill(this, reader);
+    }
+
+    /** writes the project as json the {@link #OreProject(JsonReader)} constructor reads */
+    @Override
+    public void writeJson(JsonWriter writer) throws IOException {
+        OreProjectJsonEncoder.write(this, writer);
+    }
+
     public long getCreatedAt() {
         return createdAt;
     }
@@ -43,11 +64,11 @@ public class OreProject extends OreProjectReference implements Serializable {
     }
 
     public OrePromotedVersion[] getPromotedVersions() {
-        return promotedVersions;
+        return promotedVersions.get(OreProject::readPromotedVersions);
     }
 
     public OreProjectStatsAll getStats() {
-        return stats;
+        return stats.get(OreProjectStatsAll::new);
     }
 
     public OreCategory getCategory() {
@@ -67,11 +88,26 @@ public class OreProject extends OreProjectReference implements Serializable {
     }
 
     public OreProjectSettings getSettings() {
-        return settings;
+        return settings.get(OreProjectSettings::new);
     }
 
     public String getUrlIcon() {
         return urlIcon;
     }
 
+    private static OrePromotedVersion[] readPromotedVersions(JsonReader reader) throws IOException {
+        List<OrePromotedVersion> versions = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                versions.add(null);
+            } else {
+                versions.add(new OrePromotedVersion(reader));
+            }
+        }
+        reader.endArray();
+        return versions.toArray(new OrePromotedVersion[0]);
+    }
+
 }
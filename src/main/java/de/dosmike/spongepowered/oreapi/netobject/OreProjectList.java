@@ -1,6 +1,9 @@
 package de.dosmike.spongepowered.oreapi.netobject;
 
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
 
 public class OreProjectList extends OreResultList<OreProject, OreProjectFilter> {
     @Override
@@ -11,4 +14,13 @@ public class OreProjectList extends OreResultList<OreProject, OreProjectFilter>
     public OreProjectList(JsonObject object, Class<OreProject> resultClass, OreProjectFilter previousFilter) {
         super(object, resultClass, previousFilter);
     }
+
+    @Override
+    protected OreProject constructInstanceFromJson(Class<OreProject> clazz, JsonReader reader) throws IOException {
+        return new OreProject(reader);
+    }
+
+    public OreProjectList(JsonReader reader, Class<OreProject> resultClass, OreProjectFilter previousFilter) throws IOException {
+        super(reader, resultClass, previousFilter);
+    }
 }
@@ -1,10 +1,13 @@
 package de.dosmike.spongepowered.oreapi.netobject;
 
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import de.dosmike.spongepowered.oreapi.utility.FromJson;
 import de.dosmike.spongepowered.oreapi.utility.JsonUtil;
 
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.Locale;
 
@@ -15,22 +18,36 @@ public class OreProjectReference implements Serializable {
 
     @FromJson("plugin_id")
     String pluginId;
-    @FromJson("namespace")
+    @FromJson(value = "namespace", mapper = OreNamespace.Flyweights.class)
     OreNamespace namespace;
 
     protected OreProjectReference(){}
     protected OreProjectReference(JsonObject object){
         JsonUtil.fillSelf(this, object);
     }
+
+    protected OreProjectReference(JsonReader reader) throws IOException {
+        OreProjectReferenceJsonDecoder.fill(this, reader);
+    }
     private OreProjectReference(OreProjectReference project) {
         this.pluginId = project.pluginId;
-        this.namespace = new OreNamespace(project.namespace.owner, project.namespace.slug);
+        this.namespace = project.namespace;
     }
 
     public static OreProjectReference fromProject(OreProject project) {
         return new OreProjectReference(project);
     }
+    /** reads a reference from the json written by {@link #writeJson} */
+    public static OreProjectReference readJson(JsonReader reader) throws IOException {
+        return new OreProjectReference(reader);
+    }
+    /** writes plugin id and namespace as json */
+    public void writeJson(JsonWriter writer) throws IOException {
+        OreProjectReferenceJsonEncoder.write(this, writer);
+    }
+    /** @return this, if this is a plain reference already, references are immutable */
     public OreProjectReference toReference() {
+        if (getClass() == OreProjectReference.class) return this;
         return new OreProjectReference(this);
     }
 
@@ -1,15 +1,18 @@
 package de.dosmike.spongepowered.oreapi.netobject;
 
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 import de.dosmike.spongepowered.oreapi.utility.FromJson;
 import de.dosmike.spongepowered.oreapi.utility.JsonUtil;
+import de.dosmike.spongepowered.oreapi.utility.TypeMappers;
 
 
+import java.io.IOException;
 import java.io.Serializable;
 
 public class OreProjectSettings implements Serializable {
 
-    @FromJson("keywords")
+    @FromJson(value = "keywords", mapper = TypeMappers.InterningStringMapper.class)
     String[] keywords;
     @FromJson(value = "homepage", optional = true)
     String homepageUrl;
@@ -19,9 +22,9 @@ public class OreProjectSettings implements Serializable {
     String sourcesUrl;
     @FromJson(value = "support", optional = true)
     String supportUrl;
-    @FromJson(value = "license.name", optional = true)
+    @FromJson(value = "license.name", optional = true, mapper = TypeMappers.InterningStringMapper.class)
     String licenseName;
-    @FromJson(value = "license.url", optional = true)
+    @FromJson(value = "license.url", optional = true, mapper = TypeMappers.InterningStringMapper.class)
     String licenseUrl;
     @FromJson("forum_sync")
     boolean forumSync;
@@ -30,6 +33,10 @@ public class OreProjectSettings implements Serializable {
         JsonUtil.fillSelf(this, object);
     }
 
+    public OreProjectSettings(JsonReader reader) throws IOException {
+        OreProjectSettingsJsonDecoder.fill(this, reader);
+    }
+
     public String[] getKeywords() {
         return keywords;
     }
@@ -1,10 +1,12 @@
 package de.dosmike.spongepowered.oreapi.netobject;
 
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 import de.dosmike.spongepowered.oreapi.utility.FromJson;
 import de.dosmike.spongepowered.oreapi.utility.JsonUtil;
 
 
+import java.io.IOException;
 import java.io.Serializable;
 
 public class OreProjectStatsAll implements Serializable {
@@ -26,6 +28,10 @@ public class OreProjectStatsAll implements Serializable {
         JsonUtil.fillSelf(this, json);
     }
 
+    public OreProjectStatsAll(JsonReader reader) throws IOException {
+        OreProjectStatsAllJsonDecoder.fill(this, reader);
+    }
+
     public long getViews() {
         return views;
     }
@@ -1,10 +1,13 @@
 package de.dosmike.spongepowered.oreapi.netobject;
 
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 import de.dosmike.spongepowered.oreapi.utility.FromJson;
 import de.dosmike.spongepowered.oreapi.utility.JsonUtil;
+import de.dosmike.spongepowered.oreapi.utility.TypeMappers;
 
 
+import java.io.IOException;
 import java.io.Serializable;
 
 /**
@@ -16,15 +19,19 @@ import java.io.Serializable;
  */
 public class OrePromotedVersion implements Serializable {
 
-    @FromJson("version")
+    @FromJson(value = "version", mapper = TypeMappers.InterningStringMapper.class)
     String version;
-    @FromJson("platforms")
+    @FromJson(value = "platforms", mapper = OrePlatform.Flyweights.class)
     OrePlatform[] platforms;
 
     public OrePromotedVersion(JsonObject object) {
         JsonUtil.fillSelf(this,object);
     }
 
+    public OrePromotedVersion(JsonReader reader) throws IOException {
+        OrePromotedVersionJsonDecoder.fill(this, reader);
+    }
+
     public String getVersion() {
         return version;
     }
@@ -2,7 +2,9 @@ package de.dosmike.spongepowered.oreapi.netobject;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
@@ -24,6 +26,19 @@ public class OreResultList<T,F extends OrePaginationFilter> implements Serializa
         }
     }
 
+    protected T constructInstanceFromJson(Class<T> clazz, JsonReader reader) throws IOException {
+        try {
+            Constructor<T> constructor = clazz.getConstructor(JsonReader.class);
+            constructor.setAccessible(true);
+            return constructor.newInstance(reader);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new UnsupportedOperationException("The target class "+clazz.getSimpleName()+" could not be constructed from Json", e.getCause());
+        } catch (NoSuchMethodException|InstantiationException|IllegalAccessException e) {
+            throw new UnsupportedOperationException("The target class "+clazz.getSimpleName()+" could not be constructed from Json", e);
+        }
+    }
+
     public OreResultList(JsonObject object, Class<T> resultClass, F previousFilter) {
         this(object, previousFilter);
         lateParse(object, resultClass);
@@ -39,6 +54,36 @@ public class OreResultList<T,F extends OrePaginationFilter> implements Serializa
             result.add(constructInstanceFromJson(resultClass, array.get(i).getAsJsonObject()));
     }
 
+    /** reads the result list in one pass, the result objects are constructed while reading */
+    public OreResultList(JsonReader reader, Class<T> resultClass, F previousFilter) throws IOException {
+        lateParse(reader, resultClass, previousFilter);
+    }
+    /** don't forget to call {@link #lateParse(JsonReader, Class, OrePaginationFilter)} */
+    protected OreResultList() {
+    }
+    /** streaming version of {@link #lateParse(JsonObject, Class)}, that also reads the pagination */
+    protected void lateParse(JsonReader reader, Class<T> resultClass, F previousFilter) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "pagination":
+                    pagination = new OrePagination<>(reader, previousFilter);
+                    break;
+                case "result":
+                    reader.beginArray();
+                    while (reader.hasNext())
+                        result.add(constructInstanceFromJson(resultClass, reader));
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (pagination == null)
+            throw new IOException("Result list without pagination at "+reader.getPath());
+    }
+
     public OrePagination<F> getPagination() {
         return pagination;
     }
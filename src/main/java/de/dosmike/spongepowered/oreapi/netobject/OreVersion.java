@@ -1,10 +1,13 @@
 package de.dosmike.spongepowered.oreapi.netobject;
 
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import de.dosmike.spongepowered.oreapi.utility.FromJson;
 import de.dosmike.spongepowered.oreapi.utility.JsonUtil;
 import de.dosmike.spongepowered.oreapi.utility.TypeMappers;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.net.URLEncoder;
 import java.util.Optional;
@@ -28,7 +31,7 @@ public class OreVersion implements Serializable {
     int downloads;
     @FromJson("file_info")
     OreFileInfo fileInfo;
-    @FromJson(value = "author", optional = true)
+    @FromJson(value = "author", optional = true, mapper = TypeMappers.InterningStringMapper.class)
     String author;
     @FromJson("review_state")
     OreReviewState reviewState;
@@ -44,6 +47,16 @@ public class OreVersion implements Serializable {
         JsonUtil.fillSelf(this, object);
     }
 
+    public OreVersion(OreProjectReference projectBackRef, JsonReader reader) throws IOException {
+        project = projectBackRef.toReference();
+        OreVersionJsonDecoder.fill(this, reader);
+    }
+
+    /** writes the version as json the {@link #OreVersion(OreProjectReference, JsonReader)} constructor reads, without project and changelog */
+    public void writeJson(JsonWriter writer) throws IOException {
+        OreVersionJsonEncoder.write(this, writer);
+    }
+
     public OreProjectReference getProjectRef() {
         return project;
     }
@@ -1,23 +1,30 @@
 package de.dosmike.spongepowered.oreapi.netobject;
 
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 import de.dosmike.spongepowered.oreapi.utility.FromJson;
 import de.dosmike.spongepowered.oreapi.utility.JsonUtil;
+import de.dosmike.spongepowered.oreapi.utility.TypeMappers;
 
 
+import java.io.IOException;
 import java.io.Serializable;
 
 public class OreVersionDependency implements Serializable {
 
-    @FromJson("plugin_id")
+    @FromJson(value = "plugin_id", mapper = TypeMappers.InterningStringMapper.class)
     String pluginId;
-    @FromJson(value = "version", optional = true)
+    @FromJson(value = "version", optional = true, mapper = TypeMappers.InterningStringMapper.class)
     String version;
 
     public OreVersionDependency(JsonObject object) {
         JsonUtil.fillSelf(this, object);
     }
 
+    public OreVersionDependency(JsonReader reader) throws IOException {
+        OreVersionDependencyJsonDecoder.fill(this, reader);
+    }
+
     public String getPluginId() {
         return pluginId;
     }
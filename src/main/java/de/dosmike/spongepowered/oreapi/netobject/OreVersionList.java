@@ -1,6 +1,9 @@
 package de.dosmike.spongepowered.oreapi.netobject;
 
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
 
 public class OreVersionList extends OreResultList<OreVersion, OrePaginationFilter> {
 
@@ -20,4 +23,15 @@ public class OreVersionList extends OreResultList<OreVersion, OrePaginationFilte
         this.versionProjectRef = backRef.toReference();
         lateParse(object, resultClass);
     }
+
+    @Override
+    protected OreVersion constructInstanceFromJson(Class<OreVersion> clazz, JsonReader reader) throws IOException {
+        return new OreVersion(versionProjectRef, reader);
+    }
+
+    public OreVersionList(JsonReader reader, OreProjectReference backRef, Class<OreVersion> resultClass, OrePaginationFilter previousFilter) throws IOException {
+        super();
+        this.versionProjectRef = backRef.toReference();
+        lateParse(reader, resultClass, previousFilter);
+    }
 }
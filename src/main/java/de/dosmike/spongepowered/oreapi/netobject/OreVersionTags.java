@@ -1,10 +1,12 @@
 package de.dosmike.spongepowered.oreapi.netobject;
 
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 import de.dosmike.spongepowered.oreapi.utility.FromJson;
 import de.dosmike.spongepowered.oreapi.utility.JsonUtil;
 
 
+import java.io.IOException;
 import java.io.Serializable;
 
 public class OreVersionTags implements Serializable {
@@ -15,13 +17,17 @@ public class OreVersionTags implements Serializable {
     OreStability stability;
     @FromJson(value = "release_type", optional = true)
     OreReleaseType releaseType;
-    @FromJson("platforms")
+    @FromJson(value = "platforms", mapper = OrePlatform.Flyweights.class)
     OrePlatform[] platforms;
 
     public OreVersionTags(JsonObject object) {
         JsonUtil.fillSelf(this, object);
     }
 
+    public OreVersionTags(JsonReader reader) throws IOException {
+        OreVersionTagsJsonDecoder.fill(this, reader);
+    }
+
     public boolean isMixin() {
         return mixin;
     }
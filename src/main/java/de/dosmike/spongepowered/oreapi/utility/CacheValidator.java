@@ -0,0 +1,61 @@
+package de.dosmike.spongepowered.oreapi.utility;
+
+import org.jetbrains.annotations.Nullable;
+
+import javax.net.ssl.HttpsURLConnection;
+import java.io.Serializable;
+
+/**
+ * Holds the ETag and Last-Modified validators of a response. Sending them with the
+ * next request for the same resource allows the server to reply with 304 Not Modified
+ * instead of sending the body again, if the resource did not change.
+ */
+public class CacheValidator implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String entityTag;
+    private final String lastModified;
+
+    private CacheValidator(@Nullable String entityTag, @Nullable String lastModified) {
+        this.entityTag = entityTag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @param connection a connection that received a response
+     * @return the validators of the response, or null if the response has none
+     */
+    @Nullable
+    public static CacheValidator fromResponse(HttpsURLConnection connection) {
+        String entityTag = connection.getHeaderField("ETag");
+        String lastModified = connection.getHeaderField("Last-Modified");
+        if (entityTag == null && lastModified == null) return null;
+        return new CacheValidator(entityTag, lastModified);
+    }
+
+    /**
+     * Makes the request conditional. Has to be called before the request is sent.
+     *
+     * @param connection to make conditional
+     * @return connection for piping
+     */
+    public HttpsURLConnection applyTo(HttpsURLConnection connection) {
+        if (entityTag != null)
+            connection.setRequestProperty("If-None-Match", entityTag);
+        if (lastModified != null)
+            connection.setRequestProperty("If-Modified-Since", lastModified);
+        return connection;
+    }
+
+    @Nullable
+    public String getEntityTag() {
+        return entityTag;
+    }
+
+    @Nullable
+    public String getLastModified() {
+        return lastModified;
+    }
+
+}
@@ -9,7 +9,9 @@ import java.util.stream.Collectors;
 
 /**
  * Collection wrapper that will automatically remove entries that are older than a certain amount of time
+ * @deprecated lookups scan the whole collection, use the {@link ExpiringMap} instead
  */
+@Deprecated
 public class CachingCollection<E> implements Collection<E>, Serializable {
 
     private Collection<Expiring<E>> container;
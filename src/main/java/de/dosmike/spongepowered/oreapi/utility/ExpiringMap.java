@@ -0,0 +1,585 @@
+package de.dosmike.spongepowered.oreapi.utility;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Concurrent map where entries expire a fixed time after they were put or touched.
+ * <br>
+ * Reads are plain hash lookups that read the clock once. Expired entries are removed in batches by a
+ * hashed timer wheel: every entry is linked into the slot of the tick it expires in, and writes advance
+ * the wheel to the current tick, only visiting the slots that passed since the last write. Touching an
+ * entry moves it to another slot, so putting, touching and removing are all O(1).
+ * The wheel has {@value #SLOTS} slots that cover one lifespan, entries that live longer than that
+ * stay in their slot until their round comes.
+ * <br>
+ * The clock is read once per operation and not cached between operations. A time that only the wheel
+ * updates would let entries outlive their lifespan in maps that are only read, so it would need a
+ * ticker thread. If reading the clock is too expensive, pass a coarse clock to the {@link Builder#clock}.
+ * <br>
+ * Maps created through the {@link #builder} can be bounded by a maximum weight. New entries go into a
+ * small LRU window, entries that fall out of the window compete with the eldest entry of the main
+ * region, and the one that was used less frequently recently is evicted (W-TinyLFU, frequencies are
+ * kept in a {@link FrequencySketch}). Entries that are used again in the main region are protected
+ * from eviction until other entries push them out. Evicted values can be kept as soft references,
+ * so they're still served until the garbage collector needs the memory.
+ * <br>
+ * Reads never lock. Writes update the hash map right away, but the wheel and the access queues are
+ * maintained in batches: writes queue their changes, and bounded reads are recorded in a lossy
+ * {@link ReadBuffer}. Whichever thread gets the eviction lock applies the queued work, the others
+ * carry on without waiting for it.
+ */
+public class ExpiringMap<K, V> {
+
+    private static final int SLOTS = 64;
+    private static final int MASK = SLOTS - 1;
+
+    /** access queues of the size bound */
+    private static final byte NONE = 0, WINDOW = 1, PROBATION = 2, PROTECTED = 3;
+
+    private final ConcurrentHashMap<K, Node<K, V>> entries = new ConcurrentHashMap<>();
+    private final long lifespan;
+    /** ms per slot */
+    private final long tick;
+    private final LongSupplier clock;
+    @Nullable
+    private final BiConsumer<K, V> removalListener;
+    /** slot sentinels */
+    private final Node<K, V>[] wheel;
+    /** guards the wheel, the access queues, the links of all nodes and everything below */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    /** changes to the wheel and queues, applied in order by the thread that holds the eviction lock */
+    private final ConcurrentLinkedQueue<Runnable> writeBuffer = new ConcurrentLinkedQueue<>();
+    /** the last tick that was processed */
+    private long cursor;
+
+    //region size bound, only used if bounded
+    private final boolean bounded;
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    @Nullable
+    private final Weigher<? super K, ? super V> weigher;
+    @Nullable
+    private final ReferenceQueue<V> collected;
+    @Nullable
+    private final FrequencySketch sketch;
+    @Nullable
+    private final ReadBuffer<Node<K, V>> readBuffer;
+    @Nullable
+    private final Node<K, V> window, probation, protect;
+    private long weight = 0, windowWeight = 0, protectedWeight = 0;
+    //endregion
+
+    /** estimates the memory an entry takes, in whatever unit the maximum weight is given */
+    public interface Weigher<K, V> {
+        int weigh(K key, V value);
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        /** null once the value was evicted into a soft reference */
+        volatile V value;
+        @Nullable
+        volatile SoftValue<K, V> soft;
+        volatile long expiresAt;
+        /** set once the node was dropped from the wheel, it can't be linked again after that */
+        boolean dead = false;
+        Node<K, V> prev, next;
+        /** access queue links */
+        Node<K, V> before, after;
+        byte queue = NONE;
+        final int weight;
+
+        Node(K key, V value, long expiresAt, int weight) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.weight = weight;
+        }
+
+        @Nullable
+        V value() {
+            V strong = value;
+            if (strong != null) return strong;
+            SoftValue<K, V> reference = soft;
+            return reference == null ? null : reference.get();
+        }
+    }
+
+    private static final class SoftValue<K, V> extends SoftReference<V> {
+        final Node<K, V> node;
+
+        SoftValue(V value, Node<K, V> node, ReferenceQueue<V> queue) {
+            super(value, queue);
+            this.node = node;
+        }
+    }
+
+    public static class Builder<K, V> {
+        private final long timeSpan;
+        private final TimeUnit timeUnit;
+        private long maximumWeight = Long.MAX_VALUE;
+        private Weigher<? super K, ? super V> weigher = null;
+        private boolean softValues = false;
+        private BiConsumer<K, V> removalListener = null;
+        private LongSupplier clock = System::currentTimeMillis;
+
+        private Builder(long timeSpan, TimeUnit timeUnit) {
+            this.timeSpan = timeSpan;
+            this.timeUnit = timeUnit;
+        }
+
+        /** Limits the map to this amount of entries, the least frequently used are evicted first */
+        public Builder<K, V> maximumSize(long entries) {
+            return maximumWeight(entries, null);
+        }
+
+        /**
+         * Limits the total weight of all entries, the least frequently used are evicted first.
+         * An entry that is heavier than the maximum on its own is evicted right away.
+         *
+         * @param weigher the weight of the entries, null to count every entry as 1
+         */
+        public Builder<K, V> maximumWeight(long maximum, @Nullable Weigher<? super K, ? super V> weigher) {
+            if (maximum < 1) throw new IllegalArgumentException("Maximum weight has to be at least 1");
+            this.maximumWeight = maximum;
+            this.weigher = weigher;
+            return this;
+        }
+
+        /**
+         * Values that are evicted because of the size bound are kept as soft references until they
+         * expire, so they can still be read until the garbage collector needs the memory.
+         */
+        public Builder<K, V> softValues() {
+            this.softValues = true;
+            return this;
+        }
+
+        /**
+         * @param removalListener called when an entry expired, was evicted or removed, but not when it was replaced.
+         *                        The value is null if the garbage collector already took it from the soft references.
+         */
+        public Builder<K, V> removalListener(@Nullable BiConsumer<K, V> removalListener) {
+            this.removalListener = removalListener;
+            return this;
+        }
+
+        /** @param clock the current time in ms */
+        public Builder<K, V> clock(LongSupplier clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public ExpiringMap<K, V> build() {
+            return new ExpiringMap<>(this);
+        }
+    }
+
+    /** timeSpan and timeUnit specify how long entries live after they were put or touched */
+    public static <K, V> Builder<K, V> builder(long timeSpan, TimeUnit timeUnit) {
+        return new Builder<>(timeSpan, timeUnit);
+    }
+
+    /** timeSpan and timeUnit specify how long entries live after they were put or touched */
+    public ExpiringMap(long timeSpan, TimeUnit timeUnit) {
+        this(timeSpan, timeUnit, null, System::currentTimeMillis);
+    }
+
+    /**
+     * @param removalListener called when an entry expired or was removed, but not when it was replaced
+     */
+    public ExpiringMap(long timeSpan, TimeUnit timeUnit, @Nullable BiConsumer<K, V> removalListener) {
+        this(timeSpan, timeUnit, removalListener, System::currentTimeMillis);
+    }
+
+    /**
+     * @param removalListener called when an entry expired or was removed, but not when it was replaced
+     * @param clock           the current time in ms
+     */
+    public ExpiringMap(long timeSpan, TimeUnit timeUnit, @Nullable BiConsumer<K, V> removalListener, LongSupplier clock) {
+        this(new Builder<K, V>(timeSpan, timeUnit).removalListener(removalListener).clock(clock));
+    }
+
+    @SuppressWarnings("unchecked")
+    private ExpiringMap(Builder<K, V> builder) {
+        lifespan = builder.timeUnit.toMillis(builder.timeSpan);
+        if (lifespan < 1) throw new IllegalArgumentException("Lifespan has to be at least 1 ms");
+        tick = Math.max(1L, lifespan / SLOTS);
+        clock = builder.clock;
+        removalListener = builder.removalListener;
+        wheel = (Node<K, V>[]) new Node<?, ?>[SLOTS];
+        for (int i = 0; i < SLOTS; i++) wheel[i] = sentinel();
+        cursor = clock.getAsLong() / tick;
+
+        bounded = builder.maximumWeight != Long.MAX_VALUE;
+        maximumWeight = builder.maximumWeight;
+        // 1% window, and 80% of the main region is protected
+        windowMaximum = Math.max(1L, maximumWeight / 100);
+        protectedMaximum = (maximumWeight - windowMaximum) * 4 / 5;
+        weigher = builder.weigher;
+        collected = bounded && builder.softValues ? new ReferenceQueue<>() : null;
+        sketch = bounded ? new FrequencySketch() : null;
+        readBuffer = bounded ? new ReadBuffer<>() : null;
+        if (bounded && weigher == null) sketch.ensureCapacity(maximumWeight);
+        window = bounded ? sentinel() : null;
+        probation = bounded ? sentinel() : null;
+        protect = bounded ? sentinel() : null;
+    }
+
+    private static <K, V> Node<K, V> sentinel() {
+        Node<K, V> sentinel = new Node<>(null, null, Long.MAX_VALUE, 0);
+        sentinel.prev = sentinel.next = sentinel;
+        sentinel.before = sentinel.after = sentinel;
+        return sentinel;
+    }
+
+    /** @return the value, or null if there is none or it expired */
+    @Nullable
+    public V get(K key) {
+        Node<K, V> node = entries.get(key);
+        if (node == null) return null;
+        if (node.expiresAt <= clock.getAsLong()) {
+            remove(node);
+            return null;
+        }
+        V value = node.value();
+        if (value == null) {
+            remove(node); //collected
+            return null;
+        }
+        if (bounded && readBuffer.offer(node)) drain();
+        return value;
+    }
+
+    /** like {@link #get}, but this does not count as use of the entry and never removes it */
+    @Nullable
+    public V peek(K key) {
+        Node<K, V> node = entries.get(key);
+        return node != null && node.expiresAt > clock.getAsLong() ? node.value() : null;
+    }
+
+    /** unlike {@link #get} this does not count as use of the entry */
+    public boolean containsKey(K key) {
+        Node<K, V> node = entries.get(key);
+        return node != null && node.expiresAt > clock.getAsLong() && node.value() != null;
+    }
+
+    /**
+     * Puts the value with a full lifespan, replacing any previous value.
+     *
+     * @return the previous value, if it did not expire yet
+     */
+    @Nullable
+    public V put(K key, V value) {
+        long now = clock.getAsLong();
+        int entryWeight = weigher == null ? 1 : weigher.weigh(key, value);
+        if (entryWeight < 0) throw new IllegalArgumentException("Negative weight for " + key);
+        Node<K, V> node = new Node<>(key, value, now + lifespan, entryWeight);
+        Node<K, V> previous = entries.put(key, node);
+        writeBuffer.add(() -> added(node, previous));
+        drain();
+        if (previous == null || previous.expiresAt <= now) return null;
+        return previous.value();
+    }
+
+    /**
+     * Resets the lifespan of the entry.
+     *
+     * @return false if there is no entry for the key, or it expired already
+     */
+    public boolean touch(K key) {
+        Node<K, V> node = entries.get(key);
+        if (node == null) return false;
+        long now = clock.getAsLong();
+        if (node.expiresAt <= now || node.value() == null) {
+            remove(node);
+            return false;
+        }
+        node.expiresAt = now + lifespan;
+        writeBuffer.add(() -> touched(node));
+        drain();
+        return true;
+    }
+
+    /** @return the removed value, if it did not expire yet */
+    @Nullable
+    public V remove(K key) {
+        Node<K, V> node = entries.get(key);
+        if (node == null || !remove(node)) return null;
+        return node.expiresAt > clock.getAsLong() ? node.value() : null;
+    }
+
+    /** removes the entry only if it's still mapped to the value */
+    public boolean remove(K key, V value) {
+        Node<K, V> node = entries.get(key);
+        return node != null && node.value() == value && remove(node);
+    }
+
+    /** @return the amount of entries, after dropping the expired ones. This includes evicted soft values */
+    public int size() {
+        evictExpired();
+        return entries.size();
+    }
+
+    public void clear() {
+        for (Node<K, V> node : entries.values()) remove(node);
+    }
+
+    /** Drops all entries that expired or were collected, writes do this as well if no other thread is doing it */
+    public void evictExpired() {
+        List<Node<K, V>> dropped;
+        evictionLock.lock();
+        try {
+            dropped = maintenance();
+        } finally {
+            evictionLock.unlock();
+        }
+        notifyDropped(dropped);
+    }
+
+    /** calls the consumer for all entries that did not expire yet, concurrent changes may or may not be seen */
+    public void forEach(BiConsumer<? super K, ? super V> consumer) {
+        long now = clock.getAsLong();
+        entries.forEach((key, node) -> {
+            if (node.expiresAt <= now) return;
+            V value = node.value();
+            if (value != null) consumer.accept(key, value);
+        });
+    }
+
+    private boolean remove(Node<K, V> node) {
+        if (!entries.remove(node.key, node)) return false;
+        writeBuffer.add(() -> drop(node));
+        drain();
+        if (removalListener != null) removalListener.accept(node.key, node.value());
+        return true;
+    }
+
+    /**
+     * Applies the queued work if no other thread is doing so. The buffer is checked again after
+     * unlocking, as work queued while the lock was held might have been missed by the holder.
+     */
+    private void drain() {
+        do {
+            if (!evictionLock.tryLock()) return;
+            List<Node<K, V>> dropped;
+            try {
+                dropped = maintenance();
+            } finally {
+                evictionLock.unlock();
+            }
+            notifyDropped(dropped);
+        } while (!writeBuffer.isEmpty());
+    }
+
+    //region maintenance, only call with the eviction lock held
+    /** @return the dropped nodes, to be removed from the map outside of the lock */
+    private List<Node<K, V>> maintenance() {
+        if (bounded) readBuffer.drain(this::accessed);
+        for (Runnable task; (task = writeBuffer.poll()) != null; ) task.run();
+        List<Node<K, V>> dropped = advance(clock.getAsLong());
+        if (bounded) dropped = evict(collect(dropped));
+        return dropped;
+    }
+
+    private void added(Node<K, V> node, @Nullable Node<K, V> previous) {
+        if (previous != null) drop(previous);
+        // removed or replaced before its turn came
+        if (node.dead || entries.get(node.key) != node) {
+            node.dead = true;
+            return;
+        }
+        link(node);
+        if (bounded) {
+            sketch.increment(node.key);
+            sketch.ensureCapacity(entries.size());
+            append(window, node, WINDOW);
+        }
+    }
+
+    private void touched(Node<K, V> node) {
+        // not linked yet if it was touched before it was added, then it's added with the new time
+        if (node.dead || node.prev == null) return;
+        unlink(node);
+        link(node);
+        if (bounded) accessed(node);
+    }
+
+    private void accessed(Node<K, V> node) {
+        if (node.dead) return;
+        sketch.increment(node.key);
+        onAccess(node);
+    }
+
+    private void link(Node<K, V> node) {
+        Node<K, V> sentinel = wheel[(int) ((node.expiresAt / tick) & MASK)];
+        node.prev = sentinel.prev;
+        node.next = sentinel;
+        sentinel.prev.next = node;
+        sentinel.prev = node;
+    }
+
+    private void unlink(Node<K, V> node) {
+        if (node.prev == null) return; //replaced before it was linked, or already dropped
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = node.next = null;
+    }
+
+    /** takes the node out of the wheel and the access queues */
+    private void drop(Node<K, V> node) {
+        unlink(node);
+        if (bounded) detach(node);
+        node.dead = true;
+    }
+
+    private List<Node<K, V>> advance(long now) {
+        long target = now / tick;
+        if (target <= cursor) return null;
+        List<Node<K, V>> expired = null;
+        long slots = Math.min(target - cursor, SLOTS);
+        for (long t = cursor + 1; slots-- > 0; t++) {
+            Node<K, V> sentinel = wheel[(int) (t & MASK)];
+            for (Node<K, V> node = sentinel.next, next; node != sentinel; node = next) {
+                next = node.next;
+                if (node.expiresAt > now) continue; //a later round
+                drop(node);
+                if (expired == null) expired = new ArrayList<>();
+                expired.add(node);
+            }
+        }
+        cursor = target;
+        return expired;
+    }
+
+    private void append(Node<K, V> queue, Node<K, V> node, byte type) {
+        node.before = queue.before;
+        node.after = queue;
+        queue.before.after = node;
+        queue.before = node;
+        node.queue = type;
+        if (type == WINDOW) windowWeight += node.weight;
+        else if (type == PROTECTED) protectedWeight += node.weight;
+        weight += node.weight;
+    }
+
+    private void detach(Node<K, V> node) {
+        if (node.queue == NONE) return;
+        node.before.after = node.after;
+        node.after.before = node.before;
+        node.before = node.after = null;
+        if (node.queue == WINDOW) windowWeight -= node.weight;
+        else if (node.queue == PROTECTED) protectedWeight -= node.weight;
+        weight -= node.weight;
+        node.queue = NONE;
+    }
+
+    private void onAccess(Node<K, V> node) {
+        switch (node.queue) {
+            case WINDOW:
+                detach(node);
+                append(window, node, WINDOW);
+                break;
+            case PROBATION:
+                // used again, so it's worth protecting. protected entries that were not used for
+                // the longest time have to prove themselves again
+                detach(node);
+                append(protect, node, PROTECTED);
+                while (protectedWeight > protectedMaximum && protect.after != node) {
+                    Node<K, V> demoted = protect.after;
+                    detach(demoted);
+                    append(probation, demoted, PROBATION);
+                }
+                break;
+            case PROTECTED:
+                detach(node);
+                append(protect, node, PROTECTED);
+                break;
+            default: //evicted into a soft reference
+        }
+    }
+
+    /**
+     * Moves entries that fall out of the window into probation, then evicts until the weight fits.
+     * Each entry from the window competes with the eldest probation entry, and the one with the
+     * lower frequency is evicted.
+     */
+    private List<Node<K, V>> evict(@Nullable List<Node<K, V>> dropped) {
+        int candidates = 0;
+        while (windowWeight > windowMaximum) {
+            Node<K, V> node = window.after;
+            detach(node);
+            append(probation, node, PROBATION);
+            candidates++;
+        }
+        while (weight > maximumWeight) {
+            Node<K, V> victim = first(probation);
+            if (victim == null) victim = first(protect);
+            if (victim == null) victim = first(window);
+            Node<K, V> candidate = candidates > 0 ? probation.before : null;
+            Node<K, V> evict = victim;
+            if (candidate != null && candidate != victim &&
+                    (candidate.weight > maximumWeight || sketch.frequency(candidate.key) <= sketch.frequency(victim.key))) {
+                evict = candidate;
+                candidates--;
+            } else if (candidate == victim) candidates--;
+            dropped = evict(evict, dropped);
+        }
+        return dropped;
+    }
+
+    @Nullable
+    private Node<K, V> first(Node<K, V> queue) {
+        return queue.after == queue ? null : queue.after;
+    }
+
+    /** evicted values are softened if configured, and stay in the wheel so they still expire */
+    private List<Node<K, V>> evict(Node<K, V> node, @Nullable List<Node<K, V>> dropped) {
+        detach(node);
+        if (collected != null) {
+            node.soft = new SoftValue<>(node.value, node, collected);
+            node.value = null;
+            return dropped;
+        }
+        unlink(node);
+        node.dead = true;
+        if (dropped == null) dropped = new ArrayList<>();
+        dropped.add(node);
+        return dropped;
+    }
+
+    /** drops the nodes that had their soft values collected */
+    @SuppressWarnings("unchecked")
+    private List<Node<K, V>> collect(@Nullable List<Node<K, V>> dropped) {
+        if (collected == null) return dropped;
+        for (SoftValue<K, V> reference; (reference = (SoftValue<K, V>) collected.poll()) != null; ) {
+            Node<K, V> node = reference.node;
+            if (node.dead || node.soft != reference) continue;
+            drop(node);
+            if (dropped == null) dropped = new ArrayList<>();
+            dropped.add(node);
+        }
+        return dropped;
+    }
+    //endregion
+
+    private void notifyDropped(@Nullable List<Node<K, V>> dropped) {
+        if (dropped == null) return;
+        for (Node<K, V> node : dropped)
+            if (entries.remove(node.key, node) && removalListener != null)
+                removalListener.accept(node.key, node.value());
+    }
+
+}
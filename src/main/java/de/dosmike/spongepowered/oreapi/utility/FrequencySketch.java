@@ -0,0 +1,80 @@
+package de.dosmike.spongepowered.oreapi.utility;
+
+/**
+ * Count-min sketch with 4 bit counters that estimates how often keys were seen recently.
+ * <br>
+ * Every key maps to four counters, the estimate is the smallest of them. Once ten times as many
+ * increments as the table holds counters per key were made, all counters are halved, so keys that
+ * were popular a while ago fade out. This is the TinyLFU part of the {@link ExpiringMap} admission
+ * policy, it's not thread safe and has to be guarded by the owner.
+ */
+class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    /** masks the lower three bits of every counter, to halve all 16 counters of a long at once */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private long[] table;
+    private int sampleSize;
+    private int additions;
+
+    FrequencySketch() {
+        ensureCapacity(16);
+    }
+
+    /** grows the table to estimate at least the given amount of keys, this resets all counts */
+    void ensureCapacity(long keys) {
+        int length = Integer.highestOneBit((int) Math.min(Math.max(keys, 16), 1 << 24) - 1) << 1;
+        if (table != null && table.length >= length) return;
+        table = new long[length];
+        sampleSize = 10 * length;
+        additions = 0;
+    }
+
+    /** @return the estimated recent frequency of the key, 0 to 15 */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = 15;
+        for (int i = 0; i < 4; i++) {
+            int counter = counter(hash, i);
+            frequency = Math.min(frequency, (int) ((table[counter >>> 4] >>> ((counter & 15) << 2)) & 15));
+        }
+        return frequency;
+    }
+
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            int counter = counter(hash, i);
+            int index = counter >>> 4;
+            int shift = (counter & 15) << 2;
+            if (((table[index] >>> shift) & 15) < 15) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) reset();
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++)
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        additions /= 2;
+    }
+
+    /** @return the index of the i-th counter for the hash, out of table.length * 16 */
+    private int counter(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return (int) h & ((table.length << 4) - 1);
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+
+}
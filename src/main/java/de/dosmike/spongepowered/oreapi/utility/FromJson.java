@@ -13,6 +13,7 @@ import java.lang.annotation.Target;
  * String, int and long fields are trivially parsed.
  * Enums require a static fromString(String) method that ignores case.
  * Other objects need to support a (JsonObject) constructor.
+ * {@link Lazy} fields keep the json value as text, to be decoded on first access.
  */
 public @interface FromJson {
     /**
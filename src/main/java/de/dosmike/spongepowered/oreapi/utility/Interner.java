@@ -0,0 +1,36 @@
+package de.dosmike.spongepowered.oreapi.utility;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Deduplicates equal immutable values, so values that repeat across api responses, like platform
+ * names or project owners, share one instance instead of being allocated for every project and version.
+ * <br>
+ * The pool is bounded: once it's full, further values are returned as they are. The values that
+ * repeat the most are usually seen early, so they still get shared.
+ */
+public class Interner<T> {
+
+    private final ConcurrentHashMap<T, T> pool = new ConcurrentHashMap<>();
+    private final int capacity;
+
+    /** @param capacity the maximum amount of distinct values to keep */
+    public Interner(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /** @return the pooled instance equal to value, or value itself */
+    public T intern(T value) {
+        if (value == null) return null;
+        T shared = pool.get(value);
+        if (shared != null) return shared;
+        if (pool.size() >= capacity) return value;
+        shared = pool.putIfAbsent(value, value);
+        return shared != null ? shared : value;
+    }
+
+    public int size() {
+        return pool.size();
+    }
+
+}
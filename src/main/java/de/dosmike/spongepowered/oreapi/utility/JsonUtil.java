@@ -3,141 +3,399 @@ package de.dosmike.spongepowered.oreapi.utility;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.*;
+import java.util.*;
 import java.util.function.Function;
 
 /**
  * Could probably change to gson, but this was fun.
  * Fills object instances from json.
+ * <br>
+ * The {@link FromJson} fields of a class are only inspected once, into a {@link Plan} that
+ * holds everything needed to fill an instance: pre-split keys, setters as method handles,
+ * mapper instances and parsers. Plans, mappers, enum lookup tables and constructors are cached
+ * per class, so filling the 25 projects on a search page does not repeat the reflection work.
  */
 public class JsonUtil {
 
-    public static void fillSelf(Object instance, JsonObject source) {
-        Class<?> clz = instance.getClass();
-        while (clz != Object.class) {
-            fillSelfOfType(instance, clz, source);
-            clz = clz.getSuperclass();
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private static final ClassValue<Plan> plans = new ClassValue<Plan>() {
+        @Override
+        protected Plan computeValue(Class<?> type) {
+            return new Plan(type);
         }
-    }
+    };
+    /** mappers are stateless, so one instance per mapper class is enough */
+    private static final ClassValue<TypeMapper<Object, Object>> mappers = new ClassValue<TypeMapper<Object, Object>>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        protected TypeMapper<Object, Object> computeValue(Class<?> type) {
+            try {
+                Constructor<?> con = type.getConstructor();
+                con.setAccessible(true);
+                return (TypeMapper<Object, Object>) con.newInstance();
+            } catch (IllegalAccessException | NoSuchMethodException | InstantiationException | InvocationTargetException e) {
+                throw new RuntimeException("Could not instantiate mapper '"+type.getSimpleName()+"'");
+            }
+        }
+    };
+    private static final ClassValue<EnumLookup> enums = new ClassValue<EnumLookup>() {
+        @Override
+        protected EnumLookup computeValue(Class<?> type) {
+            return new EnumLookup(type);
+        }
+    };
+    private static final ClassValue<Factory> factories = new ClassValue<Factory>() {
+        @Override
+        protected Factory computeValue(Class<?> type) {
+            return new Factory(type);
+        }
+    };
 
-    private static void fillSelfOfType(Object instance, Class<?> type, JsonObject source) {
-        Field[] fields = type.getDeclaredFields();
-        for (Field f : fields) {
-            FromJson j = f.getAnnotation(FromJson.class);
-            if (j==null) continue;
+    public static void fillSelf(Object instance, JsonObject source) {
+        for (Property property : plans.get(instance.getClass()).properties) {
             try {
-                f.setAccessible(true);
-                Class<?> elementType = f.getType();
-                String[] pelem = j.value().split("\\.");
                 JsonElement jchild = source;
-                for (int i=0; i<pelem.length && jchild != null; i++) {
+                for (int i=0; i<property.path.length && jchild != null; i++) {
                     if (!jchild.isJsonObject()) jchild = null;
-                    else jchild = jchild.getAsJsonObject().get(pelem[i]);
+                    else jchild = jchild.getAsJsonObject().get(property.path[i]);
                 }
-                if (!j.optional() && (jchild == null || jchild.isJsonNull())) {
-                    throw new RuntimeException("Missing non-optional field '"+j.value()+"'");
+                if (jchild == null || jchild.isJsonNull()) {
+                    if (!property.optional)
+                        throw new RuntimeException("Missing non-optional field '"+property.key+"'");
+                    continue; //optional, keep the default value
                 }
-                if (elementType.isArray() && !jchild.isJsonArray()) {
-                    throw new RuntimeException("Expected array where non-array json element supplied at '"+j.value()+"'");
-                } else if (!elementType.isArray() && jchild.isJsonArray()) {
-                    throw new RuntimeException("Expected non-array where array json element supplied at '"+j.value()+"'");
+                if (property.lazy) {
+                    //captured as is, arrays included
+                } else if (property.asArray && !jchild.isJsonArray()) {
+                    throw new RuntimeException("Expected array where non-array json element supplied at '"+property.key+"'");
+                } else if (!property.asArray && jchild.isJsonArray()) {
+                    throw new RuntimeException("Expected non-array where array json element supplied at '"+property.key+"'");
                 }
 
-                boolean asArray = false;
-                if (elementType.isArray()) {
-                    elementType = elementType.getComponentType();
-                    asArray = true;
+                Object result;
+                if (property.asArray) {
+                    JsonArray array = jchild.getAsJsonArray();
+                    result = Array.newInstance(property.elementType, array.size());
+                    for (int i = 0; i < array.size(); i++)
+                        Array.set(result, i, property.map(property.treeParser.apply(array.get(i))));
+                } else {
+                    result = property.map(property.treeParser.apply(jchild));
                 }
+                property.set(instance, result);
 
-                TypeMapper<Object, Object> mapper = null;
-                if (!TypeMappers.IdentityMapper.class.isAssignableFrom(j.mapper())) try {
-                    //construct mapper
-                    Constructor<?> con = j.mapper().getConstructor();
-                    con.setAccessible(true);
-                    mapper = (TypeMapper<Object, Object>)con.newInstance();
-
-                    //check that mapper output type is field type
-                    if (!ReflectionHelper.isAssignable(mapper.getOutputType(), elementType)) {
-                        throw new RuntimeException("Mapper output is not assignable to field type");
-                    }
-                    //input type is now the element type
-                    elementType = mapper.getInputType();
-
-                } catch (IllegalAccessException | NoSuchMethodException | InstantiationException | InvocationTargetException e) {
-                    throw new RuntimeException("Could not instantiate mapper '"+j.mapper().getSimpleName()+"'");
-                }
+            } catch (Throwable e) {
+                String rem = "\nParent JSON: "+source.toString();
+                throw new RuntimeException("Could not fill field "+property.field+rem, e);
+            }
+        }
+    }
 
-                Function<JsonElement, Object> parser;
-                if (ReflectionHelper.isAssignable(elementType, String.class)) {
-                    if (asArray)
-                        parser = (a)->parseArray(a, JsonUtil::parserOptString, String.class);
-                    else
-                        parser = JsonUtil::parserOptString;
-                } else if (ReflectionHelper.isAssignable(elementType, boolean.class)) {
-                    if (asArray)
-                        parser = (a)->parseArray(a, JsonUtil::parserOptBoolean, Boolean.TYPE);
-                    else
-                        parser = JsonUtil::parserOptBoolean;
-                } else if (ReflectionHelper.isAssignable(elementType, long.class)) {
-                    if (asArray)
-                        parser = (a)->parseArray(a, JsonUtil::parserOptLong, Long.TYPE);
-                    else
-                        parser = JsonUtil::parserOptLong;
-                } else if (ReflectionHelper.isAssignable(elementType, int.class)) {
-                    if (asArray)
-                        parser = (a)->parseArray(a, JsonUtil::parserOptInteger, Integer.TYPE);
-                    else
-                        parser = JsonUtil::parserOptInteger;
-                } else if (elementType.isEnum()) {
-                    final Class<Enum<?>> finalElementType = (Class<Enum<?>>) elementType;
-                    if (asArray)
-                        parser = (a)->parseArray(a, (json)->parserOptEnum(json,finalElementType), finalElementType);
-                    else
-                        parser = (json)->parserOptEnum(json,finalElementType);
-                } else {
-                    final Class<?> finalElementType = elementType;
-                    if (asArray)
-                        parser = (json)->{
-                            if (!json.isJsonArray()) return Array.newInstance(finalElementType, 0);
-                            JsonArray array = json.getAsJsonArray();
-                            Object parsedObjects = Array.newInstance(finalElementType, array.size());
-                            for (int i = 0; i < array.size(); i++) {
-                                Array.set(parsedObjects, i, parserOptObject(array.get(i), finalElementType));
-                            }
-                            return (Object[])parsedObjects;
-                        };
-                    else
-                        parser = (json)->parserOptObject(json, finalElementType);
-                }
+    //region plans
+    /** the compiled {@link FromJson} fields of a class, including its super classes */
+    private static class Plan {
+        /** in declaration order, sub class fields first */
+        private final Property[] properties;
+        /** json key tree for streaming */
+        private final Binding root = new Binding();
+        private final Property[] required;
 
-                Object result = parser.apply(jchild);
-
-                if (mapper != null) {
-                    if (asArray) {
-                        //map array to field type
-                        Object tmp = Array.newInstance(f.getClass(), Array.getLength(result));
-                        for (int i = 0; i < Array.getLength(result); i++) {
-                            Array.set(tmp,i, mapper.apply ( Array.get(result,i) ) );
-                        }
-                        f.set(instance, tmp);
-                    } else {
-                        f.set(instance, mapper.apply( result ));
-                    }
-                } else {
-                    f.set(instance, result);
+        private Plan(Class<?> type) {
+            List<Property> properties = new ArrayList<>();
+            for (Class<?> clz = type; clz != Object.class; clz = clz.getSuperclass()) {
+                for (Field f : clz.getDeclaredFields()) {
+                    FromJson j = f.getAnnotation(FromJson.class);
+                    if (j == null) continue;
+                    Property property = new Property(f, j);
+                    properties.add(property);
+                    root.bind(property.path, 0, property);
                 }
+            }
+            this.properties = properties.toArray(new Property[0]);
+            this.required = properties.stream().filter(p->!p.optional).toArray(Property[]::new);
+        }
+    }
 
+    /** a single {@link FromJson} field */
+    private static class Property {
+        private final String field;
+        private final String key;
+        private final String[] path;
+        private final boolean optional;
+        private final boolean asArray;
+        /** {@link Lazy} fields capture the json value, whatever it is */
+        private final boolean lazy;
+        /** the field type, or the component type for arrays */
+        private final Class<?> elementType;
+        /** null if values are not mapped */
+        private final TypeMapper<Object, Object> mapper;
+        /** the type read from json, before mapping */
+        private final Class<?> inputType;
+        private final MethodHandle setter;
+        private final Function<JsonElement, Object> treeParser;
+        private final ValueReader streamParser;
+
+        private Property(Field f, FromJson j) {
+            field = f.getName();
+            key = j.value();
+            path = key.split("\\.");
+            optional = j.optional();
+            Class<?> type = f.getType();
+            asArray = type.isArray();
+            lazy = type == Lazy.class;
+            elementType = asArray ? type.getComponentType() : type;
+            if (TypeMappers.IdentityMapper.class.isAssignableFrom(j.mapper())) {
+                mapper = null;
+            } else if (lazy) {
+                throw new RuntimeException("Lazy field "+field+" can not be mapped");
+            } else {
+                mapper = mappers.get(j.mapper());
+                //check that mapper output type is field type
+                if (!ReflectionHelper.isAssignable(mapper.getOutputType(), elementType)) {
+                    throw new RuntimeException("Mapper output is not assignable to field type");
+                }
+            }
+            inputType = mapper != null ? mapper.getInputType() : elementType;
+            try {
+                f.setAccessible(true);
+                setter = lookup.unreflectSetter(f).asType(SETTER);
             } catch (IllegalAccessException e) {
-                String rem = "\nParent JSON: "+source.toString();
-                throw new RuntimeException("Could not fill field "+f.getName()+rem);
+                throw new RuntimeException("Could not access field "+f.getName(), e);
+            }
+            treeParser = treeParser(inputType);
+            streamParser = streamParser(inputType);
+        }
+
+        private Object map(Object value) {
+            return mapper != null ? mapper.apply(value) : value;
+        }
+
+        private void set(Object instance, Object value) throws Throwable {
+            setter.invokeExact(instance, value);
+        }
+    }
+
+    private static Function<JsonElement, Object> treeParser(Class<?> type) {
+        if (ReflectionHelper.isAssignable(type, String.class)) {
+            return JsonUtil::parserOptString;
+        } else if (ReflectionHelper.isAssignable(type, boolean.class)) {
+            return JsonUtil::parserOptBoolean;
+        } else if (ReflectionHelper.isAssignable(type, long.class)) {
+            return JsonUtil::parserOptLong;
+        } else if (ReflectionHelper.isAssignable(type, int.class)) {
+            return JsonUtil::parserOptInteger;
+        } else if (type == Lazy.class) {
+            return (json)->json == null || json.isJsonNull() ? null : Lazy.of(json);
+        } else if (type.isEnum()) {
+            EnumLookup lookup = enums.get(type);
+            return (json)->json == null || json.isJsonNull() ? null : lookup.get(json.getAsString());
+        } else {
+            Factory factory = factories.get(type);
+            return (json)->parserOptObject(json, factory);
+        }
+    }
+
+    /** case insensitive lookup table for enum constants, falls back to the fromString method of the enum */
+    private static class EnumLookup {
+        private final Map<String, Enum<?>> constants = new HashMap<>();
+        private final MethodHandle fromString;
+
+        private EnumLookup(Class<?> enumClass) {
+            MethodHandle handle = null;
+            try {
+                Method method = enumClass.getDeclaredMethod("fromString", String.class);
+                method.setAccessible(true);
+                handle = lookup.unreflect(method);
+            } catch (NoSuchMethodException | IllegalAccessException ignore) {}
+            fromString = handle;
+            for (Object constant : enumClass.getEnumConstants()) {
+                String name = ((Enum<?>) constant).name();
+                Enum<?> value = invoke(name);
+                if (value != null) constants.put(name.toLowerCase(Locale.ROOT), value);
+            }
+        }
+
+        private Enum<?> invoke(String string) {
+            if (fromString == null) return null;
+            try {
+                return (Enum<?>) fromString.invoke(string);
             } catch (Throwable e) {
-                String rem = "\nParent JSON: "+source.toString();
-                throw new RuntimeException("Could not fill field "+f.getName()+rem, e);
+                return null;
+            }
+        }
+
+        private Enum<?> get(String string) {
+            Enum<?> value = constants.get(string.toLowerCase(Locale.ROOT));
+            return value != null ? value : invoke(string);
+        }
+    }
+
+    /** the json constructors of a class */
+    private static class Factory {
+        private final Class<?> type;
+        /** (JsonObject) constructor, or null */
+        private final MethodHandle fromTree;
+        /** (JsonReader) constructor, or null */
+        private final MethodHandle fromStream;
+
+        private Factory(Class<?> type) {
+            this.type = type;
+            fromTree = constructor(type, JsonObject.class);
+            fromStream = constructor(type, JsonReader.class);
+        }
+
+        private static MethodHandle constructor(Class<?> type, Class<?> argument) {
+            try {
+                Constructor<?> constructor = type.getConstructor(argument);
+                constructor.setAccessible(true);
+                return lookup.unreflectConstructor(constructor).asType(MethodType.methodType(Object.class, Object.class));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                return null;
+            }
+        }
+    }
+    //endregion
+
+    //region streaming
+    /** json keys to properties, nested for keys like "stats.downloads" */
+    private static class Binding {
+        private final Map<String, Binding> children = new HashMap<>();
+        private Property property = null;
+
+        private void bind(String[] path, int depth, Property property) {
+            if (depth == path.length) {
+                this.property = property;
+            } else {
+                children.computeIfAbsent(path[depth], k -> new Binding()).bind(path, depth + 1, property);
             }
         }
     }
 
+    /**
+     * Streaming counterpart to {@link #fillSelf(Object, JsonObject)}. Reads the next json object from the
+     * reader and fills the annotated fields of the instance in the same pass, without building a tree.
+     * Nested objects are read with a (JsonReader) constructor if they have one, otherwise their subtree
+     * is parsed for the (JsonObject) constructor.
+     */
+    public static void fillSelf(Object instance, JsonReader reader) throws IOException {
+        Plan plan = plans.get(instance.getClass());
+        Set<Property> filled = Collections.newSetFromMap(new IdentityHashMap<>());
+        fillObject(instance, plan.root, reader, filled);
+        for (Property property : plan.required)
+            if (!filled.contains(property))
+                throw new RuntimeException("Missing non-optional field '"+property.key+"' before "+reader.getPath());
+    }
+
+    private static void fillObject(Object instance, Binding binding, JsonReader reader, Set<Property> filled) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            Binding child = binding.children.get(reader.nextName());
+            if (child == null) {
+                reader.skipValue();
+            } else if (child.property != null) {
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+                try {
+                    child.property.set(instance, readProperty(child.property, reader));
+                } catch (IOException e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new RuntimeException("Could not fill field "+child.property.field+" at "+reader.getPath(), e);
+                }
+                filled.add(child.property);
+            } else if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                fillObject(instance, child, reader, filled);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static Object readProperty(Property property, JsonReader reader) throws IOException {
+        if (property.lazy)
+            return Lazy.capture(reader);
+        if (property.asArray != (reader.peek() == JsonToken.BEGIN_ARRAY)) {
+            throw new RuntimeException(property.asArray
+                    ? "Expected array where non-array json element supplied at '"+property.key+"'"
+                    : "Expected non-array where array json element supplied at '"+property.key+"'");
+        }
+        if (!property.asArray)
+            return property.map(readValue(property, reader));
+        List<Object> values = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext())
+            values.add(property.map(readValue(property, reader)));
+        reader.endArray();
+        Object array = Array.newInstance(property.elementType, values.size());
+        for (int i = 0; i < values.size(); i++)
+            Array.set(array, i, values.get(i));
+        return array;
+    }
+
+    /** reads a single value from json, nulls are handled by the caller */
+    private interface ValueReader {
+        Object read(JsonReader reader) throws IOException;
+    }
+
+    private static ValueReader streamParser(Class<?> type) {
+        if (ReflectionHelper.isAssignable(type, String.class)) {
+            return JsonReader::nextString;
+        } else if (ReflectionHelper.isAssignable(type, boolean.class)) {
+            return (reader)->reader.peek() == JsonToken.STRING ? Boolean.parseBoolean(reader.nextString()) : reader.nextBoolean();
+        } else if (ReflectionHelper.isAssignable(type, long.class)) {
+            return JsonReader::nextLong;
+        } else if (ReflectionHelper.isAssignable(type, int.class)) {
+            return JsonReader::nextInt;
+        } else if (type.isEnum()) {
+            EnumLookup lookup = enums.get(type);
+            return (reader)->lookup.get(reader.nextString());
+        } else {
+            Factory factory = factories.get(type);
+            return (reader)->readObject(factory, reader);
+        }
+    }
+
+    private static Object readValue(Property property, JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.NULL)
+            return property.streamParser.read(reader);
+        reader.nextNull();
+        Class<?> type = property.inputType;
+        if (!type.isPrimitive()) return null;
+        else if (type == boolean.class) return false;
+        else if (type == long.class) return 0L;
+        else return 0;
+    }
+
+    private static Object readObject(Factory factory, JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        if (factory.fromStream == null)
+            return parserOptObject(new JsonParser().parse(reader), factory);
+        try {
+            return factory.fromStream.invokeExact((Object) reader);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+    //endregion
+
     private static boolean parserOptBoolean(JsonElement element) {
         if (element == null || element.isJsonNull()) return false;
         return element.getAsBoolean();
@@ -158,43 +416,20 @@ public class JsonUtil {
         return element.getAsString();
     }
 
-    private static Enum<?> parserOptEnum(JsonElement element, Class<Enum<?>> enumClass) {
-        if (element == null || element.isJsonNull()) return null;
-        try {
-            Method fromString = enumClass.getDeclaredMethod("fromString", String.class);
-            fromString.setAccessible(true);
-            return (Enum<?>) fromString.invoke(null, element.getAsString());
-        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-            return null;
-        }
-    }
-
-    private static <T extends Object> T parserOptObject(JsonElement element, Class<T> tClass) {
+    private static Object parserOptObject(JsonElement element, Factory factory) {
         if (element == null || element.isJsonNull() || !(element instanceof JsonObject)) {
             return null;
+        } else if (factory.fromTree == null) {
+            throw new RuntimeException(factory.type.getName()+".<init>(com.google.gson.JsonObject)");
         } else {
             try {
-                Constructor<T> constructor = tClass.getConstructor(JsonObject.class);
-                constructor.setAccessible(true);
-                return constructor.newInstance(element);
-            } catch (NoSuchMethodException | InstantiationException | IllegalAccessException | InvocationTargetException e) {
-                if (e.getCause()!=null) {
-                    throw new RuntimeException(e.getMessage(), e.getCause());
-                } else {
-                    throw new RuntimeException(e.getMessage(), e);
-                }
+                return factory.fromTree.invokeExact((Object) element);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException(e.getMessage(), e);
             }
         }
     }
 
-    private static <T extends Object> T[] parseArray(JsonElement element, Function<JsonElement,T> elementParser, Class<T> tClass) {
-        if (!element.isJsonArray()) return (T[])Array.newInstance(tClass, 0);
-        JsonArray array = element.getAsJsonArray();
-        T[] instance = (T[])Array.newInstance(tClass, array.size());
-        for (int i = 0; i < array.size(); i++) {
-            instance[i] = elementParser.apply(array.get(i));
-        }
-        return instance;
-    }
-
 }
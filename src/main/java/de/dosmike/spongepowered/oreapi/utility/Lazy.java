@@ -0,0 +1,145 @@
+package de.dosmike.spongepowered.oreapi.utility;
+
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.StringReader;
+import java.math.BigDecimal;
+
+/**
+ * A json value that is only decoded when it's accessed for the first time.
+ * Until then only the compact json text is kept, and the decoder is passed by the getter
+ * of the owning object. {@link FromJson} fields of this type are captured instead of decoded.
+ */
+public class Lazy<T> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** the raw json, null once decoded */
+    private volatile String json;
+    /** only valid once json is null, the volatile write publishes it */
+    private T value;
+
+    public interface Decoder<T> {
+        T read(JsonReader reader) throws IOException;
+    }
+
+    public interface Encoder<T> {
+        void write(T value, JsonWriter writer) throws IOException;
+    }
+
+    private Lazy(String json) {
+        this.json = json;
+    }
+
+    /** copies the next value of the reader without decoding it */
+    public static <T> Lazy<T> capture(JsonReader reader) throws IOException {
+        StringBuilder raw = new StringBuilder(256);
+        int depth = 0;
+        do {
+            JsonToken token = reader.peek();
+            // separators, the text only has to be readable by a lenient JsonReader
+            if (token != JsonToken.END_ARRAY && token != JsonToken.END_OBJECT && raw.length() > 0) {
+                char last = raw.charAt(raw.length() - 1);
+                if (last != '[' && last != '{' && last != ':') raw.append(',');
+            }
+            switch (token) {
+                case BEGIN_ARRAY: reader.beginArray(); raw.append('['); depth++; break;
+                case END_ARRAY: reader.endArray(); raw.append(']'); depth--; break;
+                case BEGIN_OBJECT: reader.beginObject(); raw.append('{'); depth++; break;
+                case END_OBJECT: reader.endObject(); raw.append('}'); depth--; break;
+                case NAME: quote(raw, reader.nextName()).append(':'); break;
+                case STRING: quote(raw, reader.nextString()); break;
+                case NUMBER: raw.append(reader.nextString()); break;
+                case BOOLEAN: raw.append(reader.nextBoolean()); break;
+                case NULL: reader.nextNull(); raw.append("null"); break;
+                default: throw new IOException("Unexpected "+token+" at "+reader.getPath());
+            }
+        } while (depth > 0);
+        return new Lazy<>(raw.toString());
+    }
+
+    private static StringBuilder quote(StringBuilder raw, String string) {
+        raw.append('"');
+        int plain = 0;
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c != '"' && c != '\\' && c >= 0x20) continue;
+            raw.append(string, plain, i);
+            if (c < 0x20) raw.append(String.format("\\u%04x", (int) c));
+            else raw.append('\\').append(c);
+            plain = i + 1;
+        }
+        return raw.append(string, plain, string.length()).append('"');
+    }
+
+    /** keeps the tree as json text, so the tree itself can be collected */
+    public static <T> Lazy<T> of(JsonElement element) {
+        return new Lazy<>(element.toString());
+    }
+
+    /**
+     * Decodes the value on the first call, later calls return the same instance.
+     * If decoding fails the json is kept, so the next call will fail the same way.
+     *
+     * @param decoder reads the value from the captured json
+     * @return the decoded value
+     */
+    public T get(Decoder<? extends T> decoder) {
+        if (json == null) return value;
+        synchronized (this) {
+            String pending = json;
+            if (pending == null) return value;
+            try {
+                JsonReader reader = new JsonReader(new StringReader(pending));
+                reader.setLenient(true);
+                value = decoder.read(reader);
+            } catch (IOException | RuntimeException e) {
+                throw new RuntimeException("Could not decode lazy json value", e);
+            }
+            json = null;
+            return value;
+        }
+    }
+
+    /**
+     * Writes the json again, the captured text is copied if the value was not decoded yet.
+     *
+     * @param encoder writes the decoded value
+     */
+    public void write(JsonWriter writer, Encoder<? super T> encoder) throws IOException {
+        String pending = json;
+        if (pending == null) {
+            encoder.write(value, writer);
+            return;
+        }
+        JsonReader reader = new JsonReader(new StringReader(pending));
+        reader.setLenient(true);
+        int depth = 0;
+        do {
+            JsonToken token = reader.peek();
+            switch (token) {
+                case BEGIN_ARRAY: reader.beginArray(); writer.beginArray(); depth++; break;
+                case END_ARRAY: reader.endArray(); writer.endArray(); depth--; break;
+                case BEGIN_OBJECT: reader.beginObject(); writer.beginObject(); depth++; break;
+                case END_OBJECT: reader.endObject(); writer.endObject(); depth--; break;
+                case NAME: writer.name(reader.nextName()); break;
+                case STRING: writer.value(reader.nextString()); break;
+                case NUMBER: writer.value(new BigDecimal(reader.nextString())); break;
+                case BOOLEAN: writer.value(reader.nextBoolean()); break;
+                case NULL: reader.nextNull(); writer.nullValue(); break;
+                default: throw new IOException("Unexpected "+token+" at "+reader.getPath());
+            }
+        } while (depth > 0);
+    }
+
+    /** @return true if the value was decoded already */
+    public boolean isDecoded() {
+        return json == null;
+    }
+
+}
@@ -0,0 +1,66 @@
+package de.dosmike.spongepowered.oreapi.utility;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Lossy buffer that records reads without locking, so the access order of the {@link ExpiringMap}
+ * can be updated in batches by whichever thread holds the eviction lock.
+ * <br>
+ * Threads are spread over striped ring buffers by their id. Offering only takes a compare-and-set on
+ * the stripe, and if that fails or the ring is full the read is not recorded. Losing a few reads
+ * only makes the frequency estimates a bit less accurate.
+ */
+class ReadBuffer<E> {
+
+    private static final int SIZE = 16;
+    private static final int MASK = SIZE - 1;
+    private static final int MAX_STRIPES = 64;
+
+    private static final class Stripe<E> {
+        final AtomicReferenceArray<E> ring = new AtomicReferenceArray<>(SIZE);
+        final AtomicLong tail = new AtomicLong();
+        /** only written by the draining thread */
+        volatile long head = 0;
+    }
+
+    private final Stripe<E>[] stripes;
+
+    @SuppressWarnings("unchecked")
+    ReadBuffer() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int count = Math.min(MAX_STRIPES, Integer.highestOneBit(Math.max(1, processors * 2 - 1)));
+        stripes = (Stripe<E>[]) new Stripe<?>[count];
+        for (int i = 0; i < count; i++) stripes[i] = new Stripe<>();
+    }
+
+    /** @return true if the stripe is full and should be drained */
+    boolean offer(E element) {
+        long id = Thread.currentThread().getId() * 0x9e3779b97f4a7c15L;
+        Stripe<E> stripe = stripes[(int) (id >>> 32) & (stripes.length - 1)];
+        long head = stripe.head;
+        long tail = stripe.tail.get();
+        if (tail - head >= SIZE) return true;
+        if (!stripe.tail.compareAndSet(tail, tail + 1)) return false;
+        stripe.ring.lazySet((int) tail & MASK, element);
+        return tail + 1 - head >= SIZE;
+    }
+
+    /** passes all published reads to the consumer, only call with the owners lock held */
+    void drain(Consumer<E> consumer) {
+        for (Stripe<E> stripe : stripes) {
+            long head = stripe.head;
+            long tail = stripe.tail.get();
+            for (; head < tail; head++) {
+                int index = (int) head & MASK;
+                E element = stripe.ring.get(index);
+                if (element == null) break; //claimed but not published yet, next time
+                stripe.ring.lazySet(index, null);
+                consumer.accept(element);
+            }
+            stripe.head = head;
+        }
+    }
+
+}
@@ -1,32 +1,138 @@
 package de.dosmike.spongepowered.oreapi.utility;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.TimeZone;
 
 /**
  * Converts from api timestamp strings to unixtime millis and back.
+ * <br>
+ * The api sends ISO-8601 timestamps like {@code 2020-01-31T12:30:00.123456Z}, with an optional
+ * fraction and an optional offset ({@code Z}, {@code +hh}, {@code +hhmm} or {@code +hh:mm}).
+ * Timestamps without offset are read in the default time zone. Parsing works on the characters
+ * of the string directly, so it's safe to use from multiple threads. Timestamps with offset are
+ * parsed without allocating, those without offset look up the default time zone every time, which
+ * returns a copy, so changes to the default zone are respected.
  */
 public class RepositoryTimestamp {
-    private static final SimpleDateFormat timestampParser = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSX");
-    private static final SimpleDateFormat timestampParser2 = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
 
-    static {
-        timestampParser.setLenient(true);
-        timestampParser2.setLenient(true);
-    }
+    /** returned by {@link #parse} for strings that are not a timestamp, can't be a result for four digit years */
+    private static final long INVALID = Long.MIN_VALUE;
+    private static final long MILLIS_PER_DAY = 86_400_000L;
 
     public static long toNative(String time) {
-        try {
-            return timestampParser.parse(time).getTime();
-        } catch (Exception ignore) {}
-        try {
-            return timestampParser2.parse(time).getTime();
-        } catch (Exception ignore) {}
-        throw new RuntimeException("Could not parse time \""+time+"\"");
+        long millis = parse(time);
+        if (millis == INVALID)
+            throw new RuntimeException("Could not parse time \""+time+"\"");
+        return millis;
     }
 
+    /** @return the timestamp in UTC with millisecond precision, e.g. 2020-01-31T12:30:00.123Z */
     public static String fromNative(long unixTime) {
-        return timestampParser.format(new Date(unixTime));
+        long days = Math.floorDiv(unixTime, MILLIS_PER_DAY);
+        int millis = (int) Math.floorMod(unixTime, MILLIS_PER_DAY);
+        // civil from days, see http://howardhinnant.github.io/date_algorithms.html
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        int doe = (int) (z - era * 146097);
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int day = doy - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+        StringBuilder sb = new StringBuilder(24);
+        digits(sb, year, 4).append('-');
+        digits(sb, month, 2).append('-');
+        digits(sb, day, 2).append('T');
+        digits(sb, millis / 3_600_000, 2).append(':');
+        digits(sb, millis / 60_000 % 60, 2).append(':');
+        digits(sb, millis / 1000 % 60, 2).append('.');
+        digits(sb, millis % 1000, 3).append('Z');
+        return sb.toString();
+    }
+
+    private static StringBuilder digits(StringBuilder sb, long value, int width) {
+        String string = Long.toString(value);
+        for (int i = string.length(); i < width; i++) sb.append('0');
+        return sb.append(string);
+    }
+
+    /**
+     * @param time the timestamp string
+     * @return unixtime millis or {@link #INVALID}
+     */
+    private static long parse(String time) {
+        int length = time.length();
+        if (length < 19 || time.charAt(4) != '-' || time.charAt(7) != '-' ||
+                (time.charAt(10) != 'T' && time.charAt(10) != 't') ||
+                time.charAt(13) != ':' || time.charAt(16) != ':')
+            return INVALID;
+        int year = number(time, 0, 4);
+        int month = number(time, 5, 2);
+        int day = number(time, 8, 2);
+        int hour = number(time, 11, 2);
+        int minute = number(time, 14, 2);
+        int second = number(time, 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 ||
+                hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 60)
+            return INVALID;
+
+        int at = 19;
+        int millis = 0;
+        if (at < length && time.charAt(at) == '.') {
+            int start = ++at;
+            // only the first three digits are significant, the api sends up to microseconds
+            for (; at < length && isDigit(time.charAt(at)); at++)
+                if (at - start < 3) millis = millis * 10 + (time.charAt(at) - '0');
+            if (at == start) return INVALID;
+            for (int scale = at - start; scale < 3; scale++) millis *= 10;
+        }
+
+        // days from civil, see http://howardhinnant.github.io/date_algorithms.html
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yoe = y - era * 400;
+        int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        long days = era * 146097L + doe - 719468;
+        long local = days * MILLIS_PER_DAY + hour * 3_600_000L + minute * 60_000L + second * 1000L + millis;
+
+        if (at == length) {
+            TimeZone zone = TimeZone.getDefault();
+            return local - zone.getOffset(local - zone.getOffset(local));
+        }
+        char sign = time.charAt(at++);
+        if ((sign == 'Z' || sign == 'z') && at == length)
+            return local;
+        if (sign != '+' && sign != '-') return INVALID;
+        int offsetHours = number(time, at, 2);
+        at += 2;
+        int offsetMinutes = 0;
+        if (at < length) {
+            if (time.charAt(at) == ':') at++;
+            offsetMinutes = number(time, at, 2);
+            at += 2;
+        }
+        if (at != length || offsetHours < 0 || offsetHours > 18 || offsetMinutes < 0 || offsetMinutes > 59)
+            return INVALID;
+        long offset = offsetHours * 3_600_000L + offsetMinutes * 60_000L;
+        return sign == '+' ? local - offset : local + offset;
+    }
+
+    /** @return the value of the decimal digits, or -1 if there are not enough digits */
+    private static int number(String string, int from, int count) {
+        if (from + count > string.length()) return -1;
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            char c = string.charAt(i);
+            if (!isDigit(c)) return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
     }
 
 }
@@ -5,4 +5,7 @@ import java.util.function.Function;
 public interface TypeMapper<T,R> extends Function<T,R> {
     Class<T> getInputType();
     Class<R> getOutputType();
+
+    /** maps a value back to what it was read from, for writing it as json again */
+    T reverse(R r);
 }
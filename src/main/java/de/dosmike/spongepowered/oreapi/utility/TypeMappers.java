@@ -18,6 +18,10 @@ public class TypeMappers {
         public Object apply(Object x) {
             return x;
         }
+        @Override
+        public Object reverse(Object x) {
+            return x;
+        }
     }
     public static class StringTimestampMapper implements TypeMapper<String, Long> {
         @Override
@@ -32,6 +36,58 @@ public class TypeMappers {
         public Long apply(String s) {
             return RepositoryTimestamp.toNative(s);
         }
+        @Override
+        public String reverse(Long time) {
+            return RepositoryTimestamp.fromNative(time);
+        }
+    }
+    /** for values that repeat across responses, like platform versions or keywords */
+    public static class InterningStringMapper implements TypeMapper<String, String> {
+        private static final Interner<String> strings = new Interner<>(16384);
+        @Override
+        public Class<String> getInputType() {
+            return String.class;
+        }
+        @Override
+        public Class<String> getOutputType() {
+            return String.class;
+        }
+        @Override
+        public String apply(String s) {
+            return strings.intern(s);
+        }
+        @Override
+        public String reverse(String s) {
+            return s;
+        }
+    }
+    /**
+     * Base for mappers that share immutable netobjects, the subclass holds the pool.
+     * The value is still decoded, but only the shared instance is kept.
+     */
+    public static abstract class FlyweightMapper<T> implements TypeMapper<T, T> {
+        private final Class<T> type;
+        private final Interner<T> pool;
+        protected FlyweightMapper(Class<T> type, Interner<T> pool) {
+            this.type = type;
+            this.pool = pool;
+        }
+        @Override
+        public Class<T> getInputType() {
+            return type;
+        }
+        @Override
+        public Class<T> getOutputType() {
+            return type;
+        }
+        @Override
+        public T apply(T t) {
+            return pool.intern(t);
+        }
+        @Override
+        public T reverse(T t) {
+            return t;
+        }
     }
 
 }
@@ -0,0 +1,111 @@
+package test.dosmike.spongepowered.oreapi;
+
+import de.dosmike.spongepowered.oreapi.utility.ExpiringMap;
+import org.junit.jupiter.api.*;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+/**
+ * Read and write throughput of the cache map with an increasing amount of threads, compared to a
+ * synchronized LRU map. Every thread reads 9 times for every write, the keys are skewed towards a
+ * few popular ones. The lock free reads should scale with the amount of cores.
+ */
+@Tag("benchmark")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class CacheConcurrency {
+
+    private static final int KEYS = 4096;
+    private static final int CAPACITY = 2048;
+    private static final long DURATION_MS = 1000;
+
+    private static int[] keys(long seed) {
+        Random random = new Random(seed);
+        int[] keys = new int[1 << 16];
+        for (int i = 0; i < keys.length; i++) {
+            // squaring skews towards the lower keys
+            double uniform = random.nextDouble();
+            keys[i] = (int) (uniform * uniform * KEYS);
+        }
+        return keys;
+    }
+
+    /** @param operation called with a key, reads if positive and writes if negative */
+    private static double measure(int threads, IntConsumer operation) throws InterruptedException {
+        LongAdder operations = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        long[] deadline = new long[1];
+        for (int t = 0; t < threads; t++) {
+            int[] keys = keys(t);
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long count = 0;
+                for (int i = 0; System.nanoTime() < deadline[0]; i++) {
+                    for (int j = 0; j < 10; j++) {
+                        int key = keys[(i * 10 + j) & (keys.length - 1)];
+                        operation.accept(j == 0 ? -key - 1 : key);
+                    }
+                    count += 10;
+                }
+                operations.add(count);
+            });
+            workers[t].start();
+        }
+        deadline[0] = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DURATION_MS);
+        start.countDown();
+        for (Thread worker : workers) worker.join();
+        return operations.sum() / (DURATION_MS / 1000.0);
+    }
+
+    private static void compare(int threads) throws InterruptedException {
+        Map<Integer, Integer> lru = Collections.synchronizedMap(new LinkedHashMap<Integer, Integer>(CAPACITY * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+                return size() > CAPACITY;
+            }
+        });
+        ExpiringMap<Integer, Integer> unbounded = new ExpiringMap<>(1, TimeUnit.HOURS);
+        ExpiringMap<Integer, Integer> bounded = ExpiringMap.<Integer, Integer>builder(1, TimeUnit.HOURS)
+                .maximumSize(CAPACITY).build();
+        double locked = measure(threads, key -> {
+            if (key < 0) lru.put(-key - 1, key);
+            else lru.get(key);
+        });
+        double free = measure(threads, key -> {
+            if (key < 0) unbounded.put(-key - 1, key);
+            else unbounded.get(key);
+        });
+        double tinyLfu = measure(threads, key -> {
+            if (key < 0) bounded.put(-key - 1, key);
+            else bounded.get(key);
+        });
+        System.out.printf("%2d threads: synchronized lru %6.2f Mops/s, expiring %6.2f Mops/s, bounded %6.2f Mops/s%n",
+                threads, locked / 1e6, free / 1e6, tinyLfu / 1e6);
+    }
+
+    @Test
+    @Order(1)
+    public void warmup() throws InterruptedException {
+        compare(1);
+    }
+
+    @Test
+    @Order(2)
+    public void scaling() throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores * 2; threads *= 2)
+            compare(threads);
+    }
+
+}
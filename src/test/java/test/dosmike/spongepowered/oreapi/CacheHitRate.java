@@ -0,0 +1,74 @@
+package test.dosmike.spongepowered.oreapi;
+
+import de.dosmike.spongepowered.oreapi.utility.ExpiringMap;
+import org.junit.jupiter.api.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+
+/**
+ * Compares the hit rate of the bounded {@link ExpiringMap} with a plain LRU of the same size,
+ * for lookups of popular projects that are interrupted by catalog sweeps.
+ */
+@Tag("benchmark")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class CacheHitRate {
+
+    private static final int KEYS = 20_000;
+    private static final int CAPACITY = 500;
+    private static final int OPERATIONS = 1_000_000;
+
+    /** zipf distributed keys, with a sweep over 2000 keys every 50000 lookups */
+    private static int[] workload(long seed) {
+        Random random = new Random(seed);
+        double[] cumulative = new double[KEYS];
+        double sum = 0;
+        for (int i = 0; i < KEYS; i++) cumulative[i] = sum += 1.0 / (i + 1);
+        int[] keys = new int[OPERATIONS];
+        for (int i = 0; i < OPERATIONS; i++) {
+            if (i % 50_000 < 2000) {
+                keys[i] = KEYS - 1 - (i % 50_000) - (i / 50_000 % 5) * 2000;
+                continue;
+            }
+            int index = java.util.Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            keys[i] = index < 0 ? -index - 1 : index;
+        }
+        return keys;
+    }
+
+    private static void measure(String name, int[] keys, IntPredicate lookup) {
+        int hits = 0;
+        long start = System.nanoTime();
+        for (int key : keys) if (lookup.test(key)) hits++;
+        long duration = System.nanoTime() - start;
+        System.out.printf("%-10s %6.2f%% hits %8.1f ns/op%n", name, 100.0 * hits / keys.length, (double) duration / keys.length);
+    }
+
+    @Test
+    @Order(1)
+    public void sweeps() {
+        int[] keys = workload(42);
+        Map<Integer, Integer> lru = new LinkedHashMap<Integer, Integer>(CAPACITY * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+                return size() > CAPACITY;
+            }
+        };
+        measure("lru", keys, key -> {
+            if (lru.get(key) != null) return true;
+            lru.put(key, key);
+            return false;
+        });
+        ExpiringMap<Integer, Integer> tinyLfu = ExpiringMap.<Integer, Integer>builder(1, TimeUnit.HOURS)
+                .maximumSize(CAPACITY).build();
+        measure("w-tinylfu", keys, key -> {
+            if (tinyLfu.get(key) != null) return true;
+            tinyLfu.put(key, key);
+            return false;
+        });
+    }
+
+}
@@ -0,0 +1,274 @@
+package test.dosmike.spongepowered.oreapi;
+
+import de.dosmike.spongepowered.oreapi.ObjectCache;
+import de.dosmike.spongepowered.oreapi.netobject.*;
+import de.dosmike.spongepowered.oreapi.utility.ExpiringMap;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Offline tests for the object cache
+ */
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class Caching {
+
+    static OreProject project(String pluginId, String owner, String slug) throws IOException {
+        return new OreProject(JsonDecoding.reader(JsonDecoding.PROJECT
+                .replace("cubeengine-chat", pluginId)
+                .replace("\"owner\":\"CubeEngine\",\"slug\":\"Chat\"", "\"owner\":\"" + owner + "\",\"slug\":\"" + slug + "\"")));
+    }
+
+    static OreVersion version(OreProjectReference project, String name) throws IOException {
+        return new OreVersion(project, JsonDecoding.reader(JsonDecoding.VERSION.replace("1.0.0", name)));
+    }
+
+    @Test
+    @Order(1)
+    public void indexedLookups() throws IOException {
+        ObjectCache cache = new ObjectCache();
+        OreProject chat = cache.cacheProject(project("cubeengine-chat", "CubeEngine", "Chat"));
+        OreProject core = cache.cacheProject(project("cubeengine-core", "CubeEngine", "Core"));
+        assertSame(chat, cache.project("CubeEngine-Chat").orElse(null));
+        assertSame(core, cache.project(new OreNamespace("CubeEngine", "Core")).orElse(null));
+        assertSame(core, cache.project(core.toReference()).orElse(null));
+        assertFalse(cache.project("cubeengine-missing").isPresent());
+
+        OreVersion version = cache.cacheVersion("CubeEngine-Chat", version(chat, "1.0.0"));
+        assertSame(version, cache.version("cubeengine-chat", "1.0.0").orElse(null));
+        assertFalse(cache.version("cubeengine-core", "1.0.0").isPresent());
+    }
+
+    @Test
+    @Order(2)
+    public void replacedProject() throws IOException {
+        ObjectCache cache = new ObjectCache();
+        cache.cacheProject(project("old-id", "Owner", "Project"));
+        OreProject renamed = cache.cacheProject(project("new-id", "Owner", "Project"));
+        assertFalse(cache.project("old-id").isPresent());
+        assertSame(renamed, cache.project("new-id").orElse(null));
+        assertSame(renamed, cache.project(new OreNamespace("Owner", "Project")).orElse(null));
+    }
+
+    @Test
+    @Order(3)
+    public void expiry() throws IOException, InterruptedException {
+        ObjectCache cache = new ObjectCache(200, TimeUnit.MILLISECONDS);
+        OreProject chat = cache.cacheProject(project("cubeengine-chat", "CubeEngine", "Chat"));
+        cache.cacheVersion("cubeengine-chat", version(chat, "1.0.0"));
+        Thread.sleep(300);
+        OreProject core = cache.cacheProject(project("cubeengine-core", "CubeEngine", "Core"));
+        assertFalse(cache.project("cubeengine-chat").isPresent());
+        assertFalse(cache.project(chat.getNamespace()).isPresent());
+        assertFalse(cache.version("cubeengine-chat", "1.0.0").isPresent());
+        assertTrue(cache.project("cubeengine-core").isPresent());
+
+        // caching again resets the lifespan
+        Thread.sleep(120);
+        cache.cacheProject(core);
+        Thread.sleep(120);
+        cache.poke();
+        assertSame(core, cache.project("cubeengine-core").orElse(null));
+    }
+
+    @Test
+    @Order(4)
+    public void expiringMap() {
+        AtomicLong clock = new AtomicLong(1_000_000);
+        List<String> removed = new ArrayList<>();
+        ExpiringMap<String, String> map = new ExpiringMap<>(640, TimeUnit.MILLISECONDS,
+                (key, value) -> removed.add(key + "=" + value), clock::get);
+        map.put("a", "1");
+        map.put("b", "2");
+        map.put("c", "3");
+        // replacing returns the old value, but is not a removal
+        assertEquals("1", map.put("a", "4"));
+        assertTrue(removed.isEmpty());
+
+        clock.addAndGet(400);
+        assertTrue(map.touch("b"));
+        assertEquals("3", map.remove("c"));
+        assertEquals(1, removed.size());
+
+        // a and c would have expired, b was touched
+        clock.addAndGet(300);
+        assertNull(map.get("a"));
+        assertEquals("2", map.get("b"));
+        assertFalse(map.touch("a"));
+        assertEquals(1, map.size());
+        assertEquals(2, removed.size());
+        assertTrue(removed.contains("a=4"));
+
+        clock.addAndGet(10_000);
+        map.evictExpired();
+        assertEquals(0, map.size());
+        assertTrue(removed.contains("b=2"));
+        assertEquals(3, removed.size());
+    }
+
+    @Test
+    @Order(5)
+    public void boundedMap() {
+        AtomicLong clock = new AtomicLong(1_000_000);
+        List<String> removed = new ArrayList<>();
+        ExpiringMap<String, String> map = ExpiringMap.<String, String>builder(1, TimeUnit.HOURS)
+                .maximumSize(10)
+                .removalListener((key, value) -> removed.add(key))
+                .clock(clock::get)
+                .build();
+        for (int i = 0; i < 10; i++) map.put("hot" + i, "value");
+        // a sweep over many keys that are used once must not push out the frequently used ones,
+        // an lru of this size would have lost all of them
+        for (int i = 0; i < 1000; i++) {
+            map.get("hot" + i % 10);
+            map.put("sweep" + i, "value");
+        }
+        assertEquals(10, map.size());
+        assertEquals(1000, removed.size());
+        int survived = 0;
+        for (int i = 0; i < 10; i++) if (map.containsKey("hot" + i)) survived++;
+        assertTrue(survived >= 8, "only " + survived + " frequently used entries survived");
+    }
+
+    @Test
+    @Order(6)
+    public void weightedCache() throws IOException {
+        ObjectCache cache = ObjectCache.builder().maximumBytes(3000).build();
+        for (int i = 0; i < 10; i++) cache.cacheProject(project("project" + i, "Owner", "Project" + i));
+        cache.poke();
+        int cached = 0;
+        for (int i = 0; i < 10; i++) if (cache.project("project" + i).isPresent()) cached++;
+        assertTrue(cached <= 3, cached + " projects cached in 3000 bytes");
+
+        // evicted values stay readable through soft references while memory is available
+        ObjectCache soft = ObjectCache.builder().maximumEntries(2).softValues().build();
+        for (int i = 0; i < 10; i++) soft.cacheProject(project("project" + i, "Owner", "Project" + i));
+        for (int i = 0; i < 10; i++) assertTrue(soft.project("project" + i).isPresent());
+    }
+
+    @Test
+    @Order(7)
+    public void concurrentAccess() throws InterruptedException {
+        ExpiringMap<Integer, Integer> map = ExpiringMap.<Integer, Integer>builder(1, TimeUnit.HOURS)
+                .maximumSize(100)
+                .build();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int seed = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 100_000; i++) {
+                        int key = random.nextInt(500);
+                        Integer value = map.get(key);
+                        if (value != null) assertEquals(key, value.intValue());
+                        else if (i % 7 == 0) map.remove(key);
+                        else map.put(key, key);
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+        assertNull(failure.get());
+        assertTrue(map.size() <= 100, map.size() + " entries in a map of 100");
+    }
+
+    @Test
+    @Order(8)
+    public void persistedCache() throws IOException {
+        Path file = Files.createTempFile("oreapi", ".cache");
+        try {
+            OreProject chat = project("cubeengine-chat", "CubeEngine", "Chat");
+            OreVersion release = version(chat.toReference(), "2.0.0");
+            release.updateChangelog("Fixed \u2603 and more");
+            try (ObjectCache cache = ObjectCache.builder().persistTo(file, 1, TimeUnit.DAYS).build()) {
+                cache.cacheProject(project("cubeengine-core", "CubeEngine", "Core"));
+                cache.cacheProject(chat);
+                cache.cacheVersion("cubeengine-chat", release);
+            }
+            // a torn record from a crash while appending
+            Files.write(file, new byte[]{0, 0, 1, 0, 42}, StandardOpenOption.APPEND);
+
+            try (ObjectCache cache = ObjectCache.builder().persistTo(file, 1, TimeUnit.DAYS).build()) {
+                OreProject loaded = cache.project("CubeEngine-Chat").orElseThrow(AssertionError::new);
+                assertEquals(chat.getName(), loaded.getName());
+                assertEquals(chat.getDescription(), loaded.getDescription());
+                assertEquals(chat.getCreatedAt(), loaded.getCreatedAt());
+                assertEquals(chat.getCategory(), loaded.getCategory());
+                assertEquals(chat.getPromotedVersions().length, loaded.getPromotedVersions().length);
+                assertTrue(cache.project(new OreNamespace("CubeEngine", "Core")).isPresent());
+
+                OreVersion version = cache.version("cubeengine-chat", "2.0.0").orElseThrow(AssertionError::new);
+                assertEquals("Fixed \u2603 and more", version.getChangelog().orElse(null));
+                assertEquals(release.getCreatedAt(), version.getCreatedAt());
+                assertEquals(release.getDependencies().length, version.getDependencies().length);
+                assertEquals(chat.getNamespace(), version.getProjectRef().getNamespace());
+            }
+            // records older than the max age are not served
+            try (ObjectCache cache = ObjectCache.builder().persistTo(file, 0, TimeUnit.MILLISECONDS).build()) {
+                assertFalse(cache.project("cubeengine-chat").isPresent());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    @Order(9)
+    public void persistedCompaction() throws IOException {
+        Path file = Files.createTempFile("oreapi", ".cache");
+        try {
+            OreProject chat = project("cubeengine-chat", "CubeEngine", "Chat");
+            char[] text = new char[300_000];
+            try (ObjectCache cache = ObjectCache.builder().persistTo(file, 1, TimeUnit.DAYS).build()) {
+                cache.cacheProject(chat);
+                cache.flush();
+                long size = Files.size(file);
+                // revalidated or listed again, but nothing changed
+                cache.cacheProject(project("cubeengine-chat", "CubeEngine", "Chat"));
+                cache.flush();
+                assertEquals(size, Files.size(file), "Unchanged project was written again");
+
+                // the file is only used by one cache at a time
+                assertThrows(UncheckedIOException.class, ()->ObjectCache.builder().persistTo(file, 1, TimeUnit.DAYS).build());
+
+                for (int i = 0; i < 10; i++) {
+                    Arrays.fill(text, (char) ('a' + i));
+                    OreVersion release = version(chat.toReference(), "2.0.0");
+                    release.updateChangelog(new String(text));
+                    cache.cacheVersion("cubeengine-chat", release);
+                    cache.flush();
+                }
+                // ten changelogs were written, the superseded ones are compacted away while running
+                assertTrue(Files.size(file) < 3 * text.length, "File was not compacted, "+Files.size(file)+" bytes");
+            }
+            try (ObjectCache cache = ObjectCache.builder().persistTo(file, 1, TimeUnit.DAYS).build()) {
+                assertTrue(cache.project("cubeengine-chat").isPresent());
+                String changelog = cache.version("cubeengine-chat", "2.0.0").flatMap(OreVersion::getChangelog).orElse("");
+                assertEquals(text.length, changelog.length());
+                assertEquals('j', changelog.charAt(0), "Compaction kept an outdated changelog");
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+}
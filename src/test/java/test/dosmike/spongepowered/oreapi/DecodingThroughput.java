@@ -0,0 +1,106 @@
+package test.dosmike.spongepowered.oreapi;
+
+import de.dosmike.spongepowered.oreapi.codec.GsonCodec;
+import de.dosmike.spongepowered.oreapi.codec.GsonTreeCodec;
+import de.dosmike.spongepowered.oreapi.codec.JsonCodec;
+import de.dosmike.spongepowered.oreapi.netobject.OreProject;
+import de.dosmike.spongepowered.oreapi.netobject.OreProjectFilter;
+import de.dosmike.spongepowered.oreapi.netobject.OreProjectList;
+import de.dosmike.spongepowered.oreapi.netobject.OreProjectReference;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Measures how long the json codecs take to decode api responses. The pages hold 25 entries,
+ * the default page size of the api. To compare another backend, add it to {@link #CODECS}.
+ */
+@Tag("benchmark")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class DecodingThroughput {
+
+    private static final int WARMUP = 2_000;
+    private static final int OPERATIONS = 10_000;
+
+    static final Map<String, JsonCodec> CODECS = new LinkedHashMap<>();
+    static {
+        CODECS.put("gson", new GsonCodec());
+        CODECS.put("gson-tree", new GsonTreeCodec());
+    }
+
+    static final String SEARCH_PAGE = page(JsonDecoding.PROJECT, "cubeengine-chat");
+    static final String VERSION_PAGE = page(JsonDecoding.VERSION, "1.0.0");
+
+    /** repeats the entry 25 times, with a unique suffix for the identifying value */
+    private static String page(String entry, String identifier) {
+        StringBuilder page = new StringBuilder("{\"pagination\":{\"limit\":25,\"offset\":0,\"count\":120},\"result\":[");
+        for (int i = 0; i < 25; i++) {
+            if (i > 0) page.append(',');
+            page.append(entry.replace(identifier, identifier + "-" + i));
+        }
+        return page.append("]}").toString();
+    }
+
+    private interface Decoder {
+        Object decode(JsonCodec codec) throws IOException;
+    }
+
+    private static void measure(String payload, Decoder decoder) throws IOException {
+        for (Map.Entry<String, JsonCodec> codec : CODECS.entrySet()) {
+            for (int i = 0; i < WARMUP; i++) decoder.decode(codec.getValue());
+            long sink = 0L;
+            long start = System.nanoTime();
+            for (int i = 0; i < OPERATIONS; i++)
+                sink += decoder.decode(codec.getValue()).hashCode();
+            long duration = System.nanoTime() - start;
+            System.out.printf("%-14s %-10s %8.1f us/op (%d)%n", payload, codec.getKey(), duration / 1000.0 / OPERATIONS, sink & 1);
+        }
+    }
+
+    private OreProjectReference project;
+
+    @BeforeAll
+    public void prepare() throws IOException {
+        project = new GsonCodec().readProject(new StringReader(JsonDecoding.PROJECT)).toReference();
+    }
+
+    @Test
+    @Order(1)
+    public void searchPage() throws IOException {
+        OreProjectFilter filter = new OreProjectFilter();
+        measure("search page", codec->codec.readProjectList(new StringReader(SEARCH_PAGE), filter));
+    }
+
+    /** sub-objects of projects are decoded lazily, this includes decoding them */
+    @Test
+    @Order(2)
+    public void searchPageAccessed() throws IOException {
+        OreProjectFilter filter = new OreProjectFilter();
+        measure("search page*", codec->{
+            OreProjectList list = codec.readProjectList(new StringReader(SEARCH_PAGE), filter);
+            for (OreProject project : list.getResult()) {
+                project.getSettings();
+                project.getStats();
+                project.getPromotedVersions();
+            }
+            return list;
+        });
+    }
+
+    @Test
+    @Order(3)
+    public void project() throws IOException {
+        measure("project", codec->codec.readProject(new StringReader(JsonDecoding.PROJECT)));
+    }
+
+    @Test
+    @Order(4)
+    public void versionPage() throws IOException {
+        measure("version page", codec->codec.readVersionList(new StringReader(VERSION_PAGE), project, null));
+    }
+
+}
@@ -0,0 +1,171 @@
+package test.dosmike.spongepowered.oreapi;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import de.dosmike.spongepowered.oreapi.codec.GsonCodec;
+import de.dosmike.spongepowered.oreapi.codec.GsonTreeCodec;
+import de.dosmike.spongepowered.oreapi.codec.JsonCodec;
+import de.dosmike.spongepowered.oreapi.netobject.*;
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Offline tests for the json decoding, the payloads resemble the api responses.
+ */
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class JsonDecoding {
+
+    static final String PROJECT = "{\"created_at\":\"2019-09-10T12:30:00.000Z\",\"plugin_id\":\"cubeengine-chat\",\"name\":\"Chat\"," +
+            "\"namespace\":{\"owner\":\"CubeEngine\",\"slug\":\"Chat\"}," +
+            "\"promoted_versions\":[{\"version\":\"1.0.0\",\"platforms\":[{\"platform\":\"spongeapi\",\"platform_version\":\"7.2.0\",\"display_platform_version\":\"7.2\",\"minecraft_version\":\"1.12.2\"}]}]," +
+            "\"stats\":{\"views\":10,\"downloads\":20,\"recent_views\":1,\"recent_downloads\":2,\"stars\":3,\"watchers\":4}," +
+            "\"category\":\"chat\",\"summary\":\"A chat plugin\",\"last_updated\":\"2020-01-01T00:00:00.000Z\",\"visibility\":\"public\"," +
+            "\"user_actions\":{\"starred\":false,\"watching\":false}," +
+            "\"settings\":{\"keywords\":[\"chat\",\"cubeengine\"],\"homepage\":null,\"issues\":\"https://example.org/issues\",\"sources\":\"https://example.org\"," +
+            "\"support\":null,\"license\":{\"name\":\"GPL\",\"url\":\"https://example.org/gpl\"},\"forum_sync\":true}," +
+            "\"icon_url\":\"https://example.org/icon.png\"}";
+    static final String VERSION = "{\"created_at\":\"2019-09-11T08:00:00.000Z\",\"name\":\"1.0.0\"," +
+            "\"dependencies\":[{\"plugin_id\":\"spongeapi\",\"version\":\"7.2.0\"},{\"plugin_id\":\"cubeengine-core\",\"version\":null}]," +
+            "\"visibility\":\"public\",\"description\":\"First release\",\"stats\":{\"downloads\":42}," +
+            "\"file_info\":{\"name\":\"chat.jar\",\"size_bytes\":1234,\"md5_hash\":\"d41d8cd98f00b204e9800998ecf8427e\"}," +
+            "\"author\":\"someone\",\"review_state\":\"reviewed\"," +
+            "\"tags\":{\"mixin\":false,\"stability\":\"stable\",\"release_type\":\"minor_update\",\"platforms\":[{\"platform\":\"spongeapi\",\"platform_version\":\"7.2.0\"}]}," +
+            "\"external\":{\"discourse\":{\"post_id\":99}}}";
+    static final String PROJECT_LIST = "{\"result\":[" + PROJECT + "," + PROJECT.replace("cubeengine-chat", "cubeengine-core") + "]," +
+            "\"pagination\":{\"limit\":2,\"offset\":0,\"count\":5}}";
+
+    static JsonReader reader(String json) {
+        JsonReader reader = new JsonReader(new StringReader(json));
+        reader.setLenient(true);
+        return reader;
+    }
+
+    static JsonObject tree(String json) {
+        return new JsonParser().parse(json).getAsJsonObject();
+    }
+
+    static void assertSameProject(OreProject expected, OreProject actual) {
+        assertEquals(expected.getPluginId(), actual.getPluginId());
+        assertEquals(expected.getNamespace(), actual.getNamespace());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getCreatedAt(), actual.getCreatedAt());
+        assertEquals(expected.getLastUpdate(), actual.getLastUpdate());
+        assertEquals(expected.getCategory(), actual.getCategory());
+        assertEquals(expected.getVisibility(), actual.getVisibility());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getUrlIcon(), actual.getUrlIcon());
+        assertEquals(expected.getStats().getDownloads(), actual.getStats().getDownloads());
+        assertEquals(expected.getStats().getWatchers(), actual.getStats().getWatchers());
+        assertArrayEquals(expected.getSettings().getKeywords(), actual.getSettings().getKeywords());
+        assertEquals(expected.getSettings().getLicenseUrl(), actual.getSettings().getLicenseUrl());
+        assertEquals(expected.getSettings().getHomepageUrl(), actual.getSettings().getHomepageUrl());
+        assertEquals(expected.getSettings().isForumSync(), actual.getSettings().isForumSync());
+        assertEquals(expected.getPromotedVersions().length, actual.getPromotedVersions().length);
+        assertEquals(expected.getPromotedVersions()[0].getPlatforms()[0].toString(), actual.getPromotedVersions()[0].getPlatforms()[0].toString());
+    }
+
+    @Test
+    @Order(1)
+    public void streamingProject() throws IOException {
+        OreProject project = new OreProject(reader(PROJECT));
+        assertEquals("cubeengine-chat", project.getPluginId());
+        assertEquals(new OreNamespace("CubeEngine", "Chat"), project.getNamespace());
+        assertEquals(OreCategory.Chat, project.getCategory());
+        assertEquals("GPL", project.getSettings().getLicenseName());
+        assertNull(project.getSettings().getSupportUrl());
+        assertSameProject(new OreProject(tree(PROJECT)), project);
+    }
+
+    @Test
+    @Order(2)
+    public void streamingVersion() throws IOException {
+        OreProject project = new OreProject(reader(PROJECT));
+        OreVersion tree = new OreVersion(project, tree(VERSION));
+        OreVersion streamed = new OreVersion(project, reader(VERSION));
+        assertEquals("1.0.0", streamed.getName());
+        assertEquals(42, streamed.getDownloads());
+        assertEquals(99, streamed.getDiscoursePostId());
+        assertEquals(OreReviewState.Reviewed, streamed.getReviewState());
+        assertEquals(OreReleaseType.Minor_Update, streamed.getTags().getReleaseType());
+        assertEquals(1234L, streamed.getFileInfo().getByteSize());
+        assertNull(streamed.getDependencies()[1].getVersion());
+        assertEquals(tree.getCreatedAt(), streamed.getCreatedAt());
+        assertEquals(tree.getDependencies().length, streamed.getDependencies().length);
+        assertEquals(tree.getTags().getStability(), streamed.getTags().getStability());
+        assertEquals(tree.getProjectRef().getNamespace(), streamed.getProjectRef().getNamespace());
+    }
+
+    @Test
+    @Order(3)
+    public void streamingResultList() throws IOException {
+        OreProjectList list = new OreProjectList(reader(PROJECT_LIST), OreProject.class, new OreProjectFilter("cubeengine"));
+        assertEquals(2, list.getResult().size());
+        assertEquals("cubeengine-core", list.getResult().get(1).getPluginId());
+        assertEquals(5, list.getPagination().getResultCount());
+        assertTrue(list.getPagination().hasMorePages());
+    }
+
+    @Test
+    @Order(4)
+    public void missingRequiredField() {
+        String json = PROJECT.replace("\"name\":\"Chat\",", "");
+        assertThrows(RuntimeException.class, ()->new OreProject(reader(json)));
+    }
+
+    @Test
+    @Order(5)
+    public void codecsAgree() throws IOException {
+        for (JsonCodec codec : new JsonCodec[]{ new GsonCodec(), new GsonTreeCodec() }) {
+            assertSameProject(new OreProject(tree(PROJECT)), codec.readProject(new StringReader(PROJECT)));
+            assertEquals("First release", codec.readString(new StringReader("{\"external\":{},\"changelog\":\"First release\"}"), "changelog"));
+            assertNull(codec.readString(new StringReader("{\"changelog\":null}"), "changelog"));
+            assertTrue(codec.readBoolean(new StringReader("{\"result\":true}"), "result"));
+            assertFalse(codec.readBoolean(new StringReader("{}"), "result"));
+        }
+    }
+
+    @Test
+    @Order(6)
+    public void lazySubObjects() throws IOException, ClassNotFoundException {
+        OreProjectList list = new OreProjectList(reader(PROJECT_LIST), OreProject.class, new OreProjectFilter("cubeengine"));
+        OreProject project = list.getResult().get(0);
+        assertSame(project.getSettings(), project.getSettings());
+        assertSameProject(new OreProject(tree(PROJECT)), project);
+
+        // not yet decoded values survive serialization as json
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+            out.writeObject(list.getResult().get(1));
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(buffer.toByteArray()))) {
+            OreProject copy = (OreProject) in.readObject();
+            assertEquals("cubeengine-core", copy.getPluginId());
+            assertEquals(20, copy.getStats().getDownloads());
+            assertEquals("7.2.0", copy.getPromotedVersions()[0].getPlatforms()[0].getPlatformVersion());
+        }
+    }
+
+    @Test
+    @Order(7)
+    public void sharedValues() throws IOException {
+        OreProjectList list = new OreProjectList(reader(PROJECT_LIST), OreProject.class, new OreProjectFilter("cubeengine"));
+        OreProject first = list.getResult().get(0), second = list.getResult().get(1);
+        assertSame(first.getNamespace(), second.getNamespace());
+        assertSame(first.getPromotedVersions()[0].getPlatforms()[0], second.getPromotedVersions()[0].getPlatforms()[0]);
+        assertSame(first.getSettings().getKeywords()[0], second.getSettings().getKeywords()[0]);
+
+        OreProject project = new OreProject(tree(PROJECT));
+        assertSame(first.getNamespace(), project.getNamespace());
+        assertSame(first.getPromotedVersions()[0].getPlatforms()[0], project.getPromotedVersions()[0].getPlatforms()[0]);
+
+        String versions = "{\"result\":[" + VERSION + "," + VERSION.replace("1.0.0", "1.0.1") + "],\"pagination\":{\"limit\":2,\"offset\":0,\"count\":2}}";
+        OreVersionList versionList = new OreVersionList(reader(versions), first, OreVersion.class, null);
+        assertSame(versionList.getResult().get(0).getProjectRef(), versionList.getResult().get(1).getProjectRef());
+    }
+
+}
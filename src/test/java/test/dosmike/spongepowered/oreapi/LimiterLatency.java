@@ -0,0 +1,56 @@
+package test.dosmike.spongepowered.oreapi;
+
+import de.dosmike.spongepowered.oreapi.limiter.BucketLimiter;
+import de.dosmike.spongepowered.oreapi.limiter.RateLimiter;
+import org.junit.jupiter.api.*;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Measures the time between enqueueing a task on an idle {@link RateLimiter} and
+ * the task actually starting. The old dispatcher polled the queue every 100ms,
+ * putting this latency anywhere up to 100ms.
+ */
+@Tag("benchmark")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class LimiterLatency {
+
+    private static final int SAMPLES = 200;
+    private RateLimiter limiter;
+
+    @BeforeAll
+    public void prepareLimiter() {
+        // the budget is not what we want to measure here
+        limiter = new RateLimiter(new BucketLimiter(100_000, 1_000_000));
+        limiter.start();
+    }
+
+    @Test
+    @Order(1)
+    public void enqueueToStartIdle() throws InterruptedException {
+        long[] latencies = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            // let the limiter go idle before every sample
+            Thread.sleep(5);
+            final long enqueuedAt = System.nanoTime();
+            CompletableFuture<Long> started = limiter.enqueue(() -> System.nanoTime() - enqueuedAt);
+            latencies[i] = started.join();
+        }
+        Arrays.sort(latencies);
+        long median = latencies[SAMPLES / 2];
+        long p99 = latencies[SAMPLES * 99 / 100];
+        System.out.printf("Enqueue to start (idle): median %.1fus, p99 %.1fus, max %.1fus%n",
+                median / 1000.0, p99 / 1000.0, latencies[SAMPLES - 1] / 1000.0);
+        assertTrue(median < 10_000_000L, "Idle limiter took more than 10ms to pick up a task");
+    }
+
+    @AfterAll
+    public void reset() {
+        limiter.halt();
+    }
+
+}
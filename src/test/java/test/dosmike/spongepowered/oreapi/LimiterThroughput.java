@@ -0,0 +1,80 @@
+package test.dosmike.spongepowered.oreapi;
+
+import de.dosmike.spongepowered.oreapi.limiter.AveragingLimiter;
+import de.dosmike.spongepowered.oreapi.limiter.BucketLimiter;
+import de.dosmike.spongepowered.oreapi.limiter.CellRateLimiter;
+import de.dosmike.spongepowered.oreapi.limiter.Limiter;
+import org.junit.jupiter.api.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
+
+/**
+ * Measures the cost of scheduling decisions in the different {@link Limiter} implementations.
+ * Every operation is one tryTakeRequest and one nextRequestAt, like a waiting task would do.
+ * All limiters use the default budget of 2 requests per second and 80 per minute.
+ */
+@Tag("benchmark")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class LimiterThroughput {
+
+    private static final int WARMUP = 200_000;
+    private static final int OPERATIONS = 1_000_000;
+    private static final int THREADS = 4;
+
+    private static long operate(Limiter limiter, int operations) {
+        long sink = 0L;
+        for (int i = 0; i < operations; i++) {
+            if (limiter.tryTakeRequest()) sink++;
+            sink += limiter.nextRequestAt();
+        }
+        return sink;
+    }
+
+    private static void singleThreaded(String name, Supplier<Limiter> factory) {
+        operate(factory.get(), WARMUP);
+        Limiter limiter = factory.get();
+        long start = System.nanoTime();
+        long sink = operate(limiter, OPERATIONS);
+        long duration = System.nanoTime() - start;
+        System.out.printf("%-16s 1 thread : %8.1f ns/op (%d)%n", name, (double) duration / OPERATIONS, sink & 1);
+    }
+
+    private static void multiThreaded(String name, Supplier<Limiter> factory) throws InterruptedException {
+        Limiter limiter = factory.get();
+        operate(limiter, WARMUP);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        long start = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            new Thread(()->{
+                operate(limiter, OPERATIONS / THREADS);
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        long duration = System.nanoTime() - start;
+        System.out.printf("%-16s %d threads: %8.1f ns/op%n", name, THREADS, (double) duration / OPERATIONS);
+    }
+
+    @Test
+    @Order(1)
+    public void bucket() throws InterruptedException {
+        singleThreaded("BucketLimiter", ()->new BucketLimiter(2, 80));
+        multiThreaded("BucketLimiter", ()->new BucketLimiter(2, 80));
+    }
+
+    @Test
+    @Order(2)
+    public void averaging() throws InterruptedException {
+        singleThreaded("AveragingLimiter", ()->new AveragingLimiter(2, 80));
+        multiThreaded("AveragingLimiter", ()->new AveragingLimiter(2, 80));
+    }
+
+    @Test
+    @Order(3)
+    public void cellRate() throws InterruptedException {
+        singleThreaded("CellRateLimiter", ()->new CellRateLimiter(2, 80));
+        multiThreaded("CellRateLimiter", ()->new CellRateLimiter(2, 80));
+    }
+
+}
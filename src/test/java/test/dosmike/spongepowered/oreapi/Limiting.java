@@ -0,0 +1,385 @@
+package test.dosmike.spongepowered.oreapi;
+
+import de.dosmike.spongepowered.oreapi.limiter.AdaptiveLimiter;
+import de.dosmike.spongepowered.oreapi.limiter.AveragingLimiter;
+import de.dosmike.spongepowered.oreapi.limiter.BucketLimiter;
+import de.dosmike.spongepowered.oreapi.limiter.CellRateLimiter;
+import de.dosmike.spongepowered.oreapi.limiter.LimiterClient;
+import de.dosmike.spongepowered.oreapi.limiter.Priority;
+import de.dosmike.spongepowered.oreapi.limiter.RateLimiter;
+import de.dosmike.spongepowered.oreapi.limiter.ServerFeedback;
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * These tests don't touch the network, the tasks only pretend to make requests.
+ */
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class Limiting {
+
+    private RateLimiter limiter;
+
+    @BeforeAll
+    public void prepareLimiter() {
+        limiter = new RateLimiter(new BucketLimiter(2, 80), 2);
+        limiter.start();
+    }
+
+    /** a fake request that takes a while to respond */
+    private CompletableFuture<Void> slowRequest(AtomicInteger inFlight, AtomicInteger maxInFlight) {
+        return limiter.enqueue(()->{
+            try {
+                limiter.takeRequest();
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                Thread.sleep(600);
+                inFlight.decrementAndGet();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return null;
+        });
+    }
+
+    @Test
+    @Order(1)
+    public void concurrentRequests() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        long start = System.currentTimeMillis();
+        CompletableFuture.allOf(
+                slowRequest(inFlight, maxInFlight),
+                slowRequest(inFlight, maxInFlight),
+                slowRequest(inFlight, maxInFlight),
+                slowRequest(inFlight, maxInFlight)
+        ).join();
+        long duration = System.currentTimeMillis() - start;
+        assertEquals(2, maxInFlight.get(), "Requests did not run concurrently");
+        // sequentially this would take at least 2.4 seconds
+        assertTrue(duration < 2000, "Took "+duration+"ms for 4 requests with 2 in flight");
+    }
+
+    @Test
+    @Order(2)
+    public void priorityLanes() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        Supplier<Void> blocker = ()->{
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return null;
+        };
+        // with more slots the start order of tasks is not strictly the dequeue order
+        limiter.setConcurrency(1);
+        // occupy the slot, so the following tasks have to queue up
+        List<CompletableFuture<?>> futures = new LinkedList<>();
+        futures.add(limiter.enqueue(blocker));
+        List<String> executionOrder = Collections.synchronizedList(new LinkedList<>());
+        for (int i = 0; i < 10; i++) {
+            String label = "background"+i;
+            futures.add(limiter.enqueue(()->executionOrder.add(label), Priority.Background));
+        }
+        futures.add(limiter.enqueue(()->executionOrder.add("interactive"), Priority.Interactive));
+        gate.countDown();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        limiter.setConcurrency(2);
+        // the dispatcher only picks a task once the slot is free, so the interactive task goes first
+        int position = executionOrder.indexOf("interactive");
+        assertTrue(position == 0, "Interactive task was executed at position "+position+": "+executionOrder);
+    }
+
+    @Test
+    @Order(3)
+    public void fairClients() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        limiter.setConcurrency(1);
+        List<CompletableFuture<?>> futures = new LinkedList<>();
+        futures.add(limiter.enqueue(()->{
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return null;
+        }));
+        LimiterClient greedy = new LimiterClient(1);
+        LimiterClient modest = new LimiterClient(1);
+        List<String> executionOrder = Collections.synchronizedList(new LinkedList<>());
+        for (int i = 0; i < 20; i++) {
+            String label = "greedy"+i;
+            futures.add(limiter.enqueue(()->executionOrder.add(label), Priority.Normal, greedy));
+        }
+        futures.add(limiter.enqueue(()->executionOrder.add("modest0"), Priority.Normal, modest));
+        futures.add(limiter.enqueue(()->executionOrder.add("modest1"), Priority.Normal, modest));
+        gate.countDown();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        limiter.setConcurrency(2);
+        // clients take turns
+        int position = executionOrder.indexOf("modest1");
+        assertTrue(position >= 0 && position <= 3, "Second task of modest client was executed at position "+position+": "+executionOrder);
+    }
+
+    @Test
+    @Order(4)
+    public void cellRate() {
+        CellRateLimiter smooth = new CellRateLimiter(2, 80);
+        assertTrue(smooth.tryTakeRequest());
+        assertFalse(smooth.tryTakeRequest(), "Default rates should not allow bursts");
+        long delay = smooth.nextRequestAt() - System.currentTimeMillis();
+        // the minute rate is the stricter one, at 750ms per request
+        assertTrue(delay > 600 && delay <= 750, "Next request expected in 750ms, but was "+delay+"ms");
+
+        CellRateLimiter bursty = new CellRateLimiter(new CellRateLimiter.Rate(3, 1, TimeUnit.SECONDS, 3));
+        for (int i = 0; i < 3; i++)
+            assertTrue(bursty.tryTakeRequest(), "Burst was limited at "+i);
+        assertFalse(bursty.canRequest());
+        assertFalse(bursty.tryTakeRequest());
+    }
+
+    @Test
+    @Order(5)
+    public void averaging() throws InterruptedException {
+        AveragingLimiter limiter = new AveragingLimiter(2, 3);
+        assertTrue(limiter.tryTakeRequest());
+        assertTrue(limiter.tryTakeRequest());
+        assertFalse(limiter.canRequest(), "Second limit was not hit");
+        long delay = limiter.nextRequestAt() - System.currentTimeMillis();
+        assertTrue(delay > 900 && delay <= 1001, "Next request expected in 1s, but was "+delay+"ms");
+        Thread.sleep(delay);
+        assertTrue(limiter.tryTakeRequest());
+        assertFalse(limiter.canRequest(), "Minute limit was not hit");
+        delay = limiter.nextRequestAt() - System.currentTimeMillis();
+        assertTrue(delay > 58_000 && delay <= 60_001, "Next request expected in 59s, but was "+delay+"ms");
+    }
+
+    @Test
+    @Order(6)
+    public void adaptive() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(2.0, 0.5, 4.0, 0.5);
+        limiter.onFeedback(ServerFeedback.fromResponse(200, Collections.emptyMap()));
+        assertEquals(2.0, limiter.getRate(), 0.001, "Rate went up without rate limit headers");
+        limiter.onFeedback(ServerFeedback.fromResponse(200, Collections.singletonMap("X-RateLimit-Remaining", Collections.singletonList("20"))));
+        assertEquals(2.5, limiter.getRate(), 0.001);
+
+        AdaptiveLimiter capped = new AdaptiveLimiter();
+        for (int i = 0; i < 100; i++)
+            capped.onFeedback(ServerFeedback.fromResponse(200, Collections.singletonMap("X-RateLimit-Remaining", Collections.singletonList("20"))));
+        assertEquals(80 / 60.0, capped.getRate(), 0.001, "Default rate went above 80 per minute");
+
+        // Ore sends no rate limit headers, the rate has to recover after being throttled anyway
+        AdaptiveLimiter recovering = new AdaptiveLimiter();
+        recovering.onFeedback(ServerFeedback.fromResponse(ServerFeedback.TOO_MANY_REQUESTS, Collections.emptyMap()));
+        recovering.onFeedback(ServerFeedback.fromResponse(ServerFeedback.TOO_MANY_REQUESTS, Collections.emptyMap()));
+        assertEquals(20 / 60.0, recovering.getRate(), 0.001);
+        for (int i = 0; i < 100; i++)
+            recovering.onFeedback(ServerFeedback.fromResponse(200, Collections.emptyMap()));
+        assertEquals(80 / 60.0, recovering.getRate(), 0.001, "Rate did not recover to the initial rate");
+
+        Map<String, List<String>> headers = new HashMap<>();
+        headers.put("retry-after", Collections.singletonList("3"));
+        long now = System.currentTimeMillis();
+        limiter.onFeedback(ServerFeedback.fromResponse(ServerFeedback.TOO_MANY_REQUESTS, headers));
+        assertEquals(1.25, limiter.getRate(), 0.001);
+        assertFalse(limiter.canRequest());
+        long delay = limiter.nextRequestAt() - now;
+        assertTrue(delay >= 2900 && delay <= 3100, "Retry-After was not respected, next request in "+delay+"ms");
+
+        for (int i = 0; i < 10; i++)
+            limiter.onFeedback(ServerFeedback.fromResponse(ServerFeedback.TOO_MANY_REQUESTS, Collections.emptyMap()));
+        assertEquals(0.5, limiter.getRate(), 0.001, "Rate went below minimum");
+    }
+
+    @Test
+    @Order(7)
+    public void cancelAndDeadline() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        limiter.setConcurrency(1);
+        CompletableFuture<?> blocked = limiter.enqueue(()->{
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return null;
+        });
+        AtomicInteger executed = new AtomicInteger();
+        CompletableFuture<Integer> canceled = limiter.enqueue(executed::incrementAndGet);
+        CompletableFuture<Integer> expired = limiter.enqueue(executed::incrementAndGet, Priority.Normal,
+                LimiterClient.ANONYMOUS, System.currentTimeMillis() + 100);
+        canceled.cancel(true);
+        // the deadline should fail the task while the slot is still occupied
+        ExecutionException timeout = assertThrows(ExecutionException.class, ()->expired.get(1, TimeUnit.SECONDS));
+        assertTrue(timeout.getCause() instanceof TimeoutException, "Expected a timeout, got "+timeout.getCause());
+        gate.countDown();
+        blocked.join();
+        int executedAfter = limiter.enqueue(()->executed.get()+1).join();
+        assertEquals(1, executedAfter, "Dropped tasks were executed");
+        limiter.setConcurrency(2);
+    }
+
+    @Test
+    @Order(8)
+    public void earliestDeadlineFirst() {
+        CountDownLatch gate = new CountDownLatch(1);
+        limiter.setConcurrency(1);
+        List<CompletableFuture<?>> futures = new LinkedList<>();
+        futures.add(limiter.enqueue(()->{
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return null;
+        }));
+        long now = System.currentTimeMillis();
+        List<String> executionOrder = Collections.synchronizedList(new LinkedList<>());
+        futures.add(limiter.enqueue(()->executionOrder.add("none"), Priority.Normal, LimiterClient.ANONYMOUS, Long.MAX_VALUE));
+        futures.add(limiter.enqueue(()->executionOrder.add("late"), Priority.Normal, LimiterClient.ANONYMOUS, now + 60_000L));
+        futures.add(limiter.enqueue(()->executionOrder.add("early"), Priority.Normal, LimiterClient.ANONYMOUS, now + 30_000L));
+        gate.countDown();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        limiter.setConcurrency(2);
+        assertEquals(Arrays.asList("early", "late", "none"), executionOrder, "Deadlines were not respected");
+    }
+
+    @Test
+    @Order(9)
+    public void completionExecutor() {
+        ExecutorService completion = Executors.newSingleThreadExecutor();
+        CountDownLatch attached = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        limiter.setConcurrency(1);
+        // a slow callback must not occupy the slot of the following task
+        CompletableFuture<?> slowCallback = limiter.enqueue(()->{
+                    try {
+                        attached.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return null;
+                }, Priority.Normal, LimiterClient.ANONYMOUS, Long.MAX_VALUE, completion)
+                .thenRun(()->{
+                    try {
+                        gate.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+        attached.countDown();
+        CompletableFuture<String> next = limiter.enqueue(()->"done");
+        assertEquals("done", next.join());
+        assertFalse(slowCallback.isDone(), "Callback did not wait for the gate");
+        gate.countDown();
+        slowCallback.join();
+        limiter.setConcurrency(2);
+        completion.shutdown();
+    }
+
+    /** occupies the only slot until the returned latch is counted down */
+    private CountDownLatch blockSlot() {
+        CountDownLatch gate = new CountDownLatch(1);
+        limiter.setConcurrency(1);
+        limiter.enqueue(()->{
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return null;
+        });
+        return gate;
+    }
+
+    @Test
+    @Order(10)
+    public void sharedRequests() throws InterruptedException {
+        CountDownLatch gate = blockSlot();
+        LimiterClient client = new LimiterClient(1);
+        AtomicInteger executed = new AtomicInteger();
+        List<String> executionOrder = Collections.synchronizedList(new LinkedList<>());
+        CompletableFuture<Integer> background = limiter.enqueueShared("shared", ()->{
+            executionOrder.add("shared");
+            return executed.incrementAndGet();
+        }, Priority.Background, client, System.currentTimeMillis() + 100, null);
+        CompletableFuture<?> normal = limiter.enqueue(()->executionOrder.add("normal"), Priority.Normal, client);
+        // joining raises the priority and drops the deadline of the shared task
+        CompletableFuture<Integer> interactive = limiter.enqueueShared("shared", executed::incrementAndGet,
+                Priority.Interactive, client, Long.MAX_VALUE, null);
+        Thread.sleep(300);
+        gate.countDown();
+        assertEquals(1, background.join().intValue());
+        assertEquals(1, interactive.join().intValue());
+        normal.join();
+        limiter.setConcurrency(2);
+        assertEquals(1, executed.get(), "Shared request was executed more than once");
+        assertEquals(Arrays.asList("shared", "normal"), executionOrder, "Priority of the shared request was not raised");
+    }
+
+    @Test
+    @Order(11)
+    public void sharedCancel() {
+        CountDownLatch gate = blockSlot();
+        LimiterClient client = new LimiterClient(1);
+        AtomicInteger executed = new AtomicInteger();
+        CompletableFuture<Integer> canceled = limiter.enqueueShared("one", executed::incrementAndGet,
+                Priority.Normal, client, Long.MAX_VALUE, null);
+        CompletableFuture<Integer> waiting = limiter.enqueueShared("one", executed::incrementAndGet,
+                Priority.Normal, client, Long.MAX_VALUE, null);
+        canceled.cancel(true);
+        CompletableFuture<Integer> abandoned1 = limiter.enqueueShared("all", executed::incrementAndGet,
+                Priority.Normal, client, Long.MAX_VALUE, null);
+        CompletableFuture<Integer> abandoned2 = limiter.enqueueShared("all", executed::incrementAndGet,
+                Priority.Normal, client, Long.MAX_VALUE, null);
+        abandoned1.cancel(true);
+        abandoned2.cancel(true);
+        gate.countDown();
+        // the other caller still gets the result
+        assertEquals(1, waiting.join().intValue());
+        assertTrue(canceled.isCancelled());
+        int executedAfter = limiter.enqueue(executed::get).join();
+        limiter.setConcurrency(2);
+        assertEquals(1, executedAfter, "Request was executed after all callers canceled");
+        // the abandoned request is gone, so the key starts a new request
+        assertEquals(2, limiter.enqueueShared("all", executed::incrementAndGet,
+                Priority.Normal, client, Long.MAX_VALUE, null).join().intValue());
+    }
+
+    @Test
+    @Order(12)
+    public void sharedFailure() {
+        CountDownLatch gate = blockSlot();
+        LimiterClient client = new LimiterClient(1);
+        Supplier<Integer> failing = ()->{
+            throw new IllegalStateException("Request failed");
+        };
+        List<CompletableFuture<Integer>> callers = new LinkedList<>();
+        for (int i = 0; i < 3; i++)
+            callers.add(limiter.enqueueShared("failing", failing, Priority.Normal, client, Long.MAX_VALUE, null));
+        gate.countDown();
+        for (CompletableFuture<Integer> caller : callers) {
+            ExecutionException failure = assertThrows(ExecutionException.class, ()->caller.get(1, TimeUnit.SECONDS));
+            assertTrue(failure.getCause() instanceof IllegalStateException, "Expected the error of the request, got "+failure.getCause());
+        }
+        limiter.setConcurrency(2);
+    }
+
+    @AfterAll
+    public void reset() {
+        limiter.halt();
+    }
+
+}
@@ -0,0 +1,62 @@
+package test.dosmike.spongepowered.oreapi;
+
+import de.dosmike.spongepowered.oreapi.utility.RepositoryTimestamp;
+import org.junit.jupiter.api.*;
+
+import java.text.SimpleDateFormat;
+import java.util.function.ToLongFunction;
+
+/**
+ * Compares the timestamp parser with the SimpleDateFormat based implementation it replaced.
+ */
+@Tag("benchmark")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class TimestampParsing {
+
+    private static final int WARMUP = 200_000;
+    private static final int OPERATIONS = 1_000_000;
+
+    /** the previous implementation, only safe on a single thread */
+    private static class Legacy {
+        private final SimpleDateFormat timestampParser = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSX");
+        private final SimpleDateFormat timestampParser2 = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+
+        long toNative(String time) {
+            try {
+                return timestampParser.parse(time).getTime();
+            } catch (Exception ignore) {}
+            try {
+                return timestampParser2.parse(time).getTime();
+            } catch (Exception ignore) {}
+            throw new RuntimeException("Could not parse time \""+time+"\"");
+        }
+    }
+
+    private static void measure(String name, String timestamp, ToLongFunction<String> parser) {
+        for (int i = 0; i < WARMUP; i++) parser.applyAsLong(timestamp);
+        long sink = 0L;
+        long start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++)
+            sink += parser.applyAsLong(timestamp);
+        long duration = System.nanoTime() - start;
+        System.out.printf("%-8s %-26s %8.1f ns/op (%d)%n", name, timestamp, (double) duration / OPERATIONS, sink & 1);
+    }
+
+    @Test
+    @Order(1)
+    public void withFraction() {
+        String timestamp = "2019-09-10T12:30:00.000Z";
+        measure("legacy", timestamp, new Legacy()::toNative);
+        measure("parser", timestamp, RepositoryTimestamp::toNative);
+    }
+
+    /** the legacy implementation has to go through an exception here */
+    @Test
+    @Order(2)
+    public void withoutFraction() {
+        String timestamp = "2019-09-10T12:30:00";
+        measure("legacy", timestamp, new Legacy()::toNative);
+        measure("parser", timestamp, RepositoryTimestamp::toNative);
+    }
+
+}
@@ -0,0 +1,89 @@
+package test.dosmike.spongepowered.oreapi;
+
+import de.dosmike.spongepowered.oreapi.utility.RepositoryTimestamp;
+import org.junit.jupiter.api.*;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the timestamp parser against java.time
+ */
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class Timestamps {
+
+    static final String[] OFFSET_TIMESTAMPS = {
+            "2019-09-10T12:30:00.000Z",
+            "2019-09-10T12:30:00Z",
+            "2020-02-29T23:59:59.9Z",
+            "2020-05-15T19:04:31.802207Z",
+            "1999-12-31T22:00:00.123+02:00",
+            "2038-01-19T03:14:07-05:30",
+            "1970-01-01T00:00:00.000Z",
+            "2016-03-01T00:00:00+00:00",
+    };
+
+    @Test
+    @Order(1)
+    public void offsetTimestamps() {
+        for (String timestamp : OFFSET_TIMESTAMPS) {
+            long expected = OffsetDateTime.parse(timestamp).toInstant().toEpochMilli();
+            assertEquals(expected, RepositoryTimestamp.toNative(timestamp), timestamp);
+        }
+        long expected = OffsetDateTime.parse("2019-09-10T12:30:00.000+02:00").toInstant().toEpochMilli();
+        assertEquals(expected, RepositoryTimestamp.toNative("2019-09-10T12:30:00.000+0200"));
+        assertEquals(expected, RepositoryTimestamp.toNative("2019-09-10T12:30:00.000+02"));
+    }
+
+    @Test
+    @Order(2)
+    public void localTimestamps() {
+        String timestamp = "2019-09-10T12:30:00";
+        long expected = LocalDateTime.parse(timestamp).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        assertEquals(expected, RepositoryTimestamp.toNative(timestamp));
+    }
+
+    @Test
+    @Order(3)
+    public void roundTrip() {
+        for (String timestamp : OFFSET_TIMESTAMPS) {
+            long millis = RepositoryTimestamp.toNative(timestamp);
+            assertEquals(millis, RepositoryTimestamp.toNative(RepositoryTimestamp.fromNative(millis)), timestamp);
+        }
+        assertEquals("2019-09-10T12:30:00.000Z", RepositoryTimestamp.fromNative(RepositoryTimestamp.toNative("2019-09-10T14:30:00+02:00")));
+    }
+
+    @Test
+    @Order(4)
+    public void invalidTimestamps() {
+        for (String timestamp : new String[]{ "", "2019-09-10", "2019-09-10 12:30:00", "2019-13-10T12:30:00Z",
+                "2019-09-10T12:30:00.Z", "2019-09-10T12:30:00.000X", "2019-09-10T12:30:00+2", "2019-09-1OT12:30:00Z" })
+            assertThrows(RuntimeException.class, ()->RepositoryTimestamp.toNative(timestamp), timestamp);
+    }
+
+    @Test
+    @Order(5)
+    public void concurrentParsing() throws InterruptedException, ExecutionException {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            Callable<Boolean> parser = ()->{
+                for (int i = 0; i < 10_000; i++) {
+                    String timestamp = OFFSET_TIMESTAMPS[i % OFFSET_TIMESTAMPS.length];
+                    if (RepositoryTimestamp.toNative(timestamp) != OffsetDateTime.parse(timestamp).toInstant().toEpochMilli())
+                        return false;
+                }
+                return true;
+            };
+            for (Future<Boolean> result : pool.invokeAll(java.util.Collections.nCopies(4, parser)))
+                assertTrue(result.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+}